@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ctro.bender.Bender;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderSession;
+import org.ctro.bender.BenderVisitor;
+import org.ctro.bender.beans.BenderBeanSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of {@link BenderBeanSource} traversals over generated bean graphs.
+ * <p>Visitors are registered in a shared session during setup, so only the traversal is measured.
+ *
+ * @author Jordi Carretero
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanBenchmark {
+
+	@Param({ "10", "1000" })
+	private int size;
+
+	private BenderSession session;
+
+	private BenchBean wide;
+
+	private BenchBean deep;
+
+	@Setup
+	public void setup() throws BenderException {
+		session = new BenderSession();
+		wide = BenchBean.wide(size);
+		deep = BenchBean.deep(Math.min(size, 256));
+		BenderBeanSource source = new BenderBeanSource(session, wide);
+		source.register(WideVisitor.class);
+		source.register(DeepVisitor.class);
+		source.register(ListVisitor.class);
+		source.register(ValuesVisitor.class);
+	}
+
+	@Benchmark
+	public long wideGraph() throws BenderException {
+		WideVisitor visitor = new WideVisitor();
+		new BenderBeanSource(session, wide).accept(visitor);
+		return visitor.sum;
+	}
+
+	@Benchmark
+	public long deepGraph() throws BenderException {
+		DeepVisitor visitor = new DeepVisitor();
+		new BenderBeanSource(session, deep).accept(visitor);
+		return visitor.sum;
+	}
+
+	@Benchmark
+	public long list() throws BenderException {
+		ListVisitor visitor = new ListVisitor();
+		new BenderBeanSource(session, wide).accept(visitor);
+		return visitor.sum;
+	}
+
+	@Benchmark
+	public long primitiveArray() throws BenderException {
+		ValuesVisitor visitor = new ValuesVisitor();
+		new BenderBeanSource(session, wide).accept(visitor);
+		return visitor.sum;
+	}
+
+	public static class WideVisitor implements BenderVisitor {
+
+		long sum;
+
+		@Bender("this.children[]")
+		public void visitChild(@Bender("name") String name, @Bender("value") int value) {
+			sum += name.length() + value;
+		}
+
+		@Override
+		public void visitEnd() {
+		}
+	}
+
+	public static class DeepVisitor implements BenderVisitor {
+
+		long sum;
+
+		@Bender("this")
+		public void visitBean(@Bender("value") int value) {
+			sum += value;
+		}
+
+		@Bender("this.child")
+		public BenderVisitor visitChild(@Bender("this") BenchBean child) {
+			return child != null ? this : null;
+		}
+
+		@Override
+		public void visitEnd() {
+		}
+	}
+
+	public static class ListVisitor implements BenderVisitor {
+
+		long sum;
+
+		@Bender("this.items[]")
+		public void visitItem(@Bender("getName()") String name, @Bender("getValue()") int value) {
+			sum += name.length() + value;
+		}
+
+		@Override
+		public void visitEnd() {
+		}
+	}
+
+	public static class ValuesVisitor implements BenderVisitor {
+
+		long sum;
+
+		@Bender("this.values[]")
+		public void visitValue(@Bender("this") int value) {
+			sum += value;
+		}
+
+		@Override
+		public void visitEnd() {
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Bean model traversed by the bean benchmarks.
+ * <p>Graphs are generated with a fixed shape: wide graphs have all their beans one level below the
+ * root, deep graphs are a chain of single children.
+ *
+ * @author Jordi Carretero
+ *
+ */
+public class BenchBean {
+
+	private final String name;
+
+	private final int value;
+
+	private BenchBean child;
+
+	private BenchBean[] children = new BenchBean[0];
+
+	private List<BenchBean> items = new ArrayList<>();
+
+	private int[] values = new int[0];
+
+	public BenchBean(String name, int value) {
+		this.name = name;
+		this.value = value;
+	}
+
+	/**
+	 * Creates a root bean with <code>size</code> children, list items and primitive values
+	 *
+	 * @param size The number of beans and values
+	 * @return The root bean
+	 */
+	public static BenchBean wide(int size) {
+		BenchBean root = new BenchBean("root", size);
+		root.children = new BenchBean[size];
+		root.values = new int[size];
+		for (int i = 0; i < size; i++) {
+			BenchBean bean = new BenchBean("bean" + i, i);
+			root.children[i] = bean;
+			root.items.add(bean);
+			root.values[i] = i;
+		}
+		return root;
+	}
+
+	/**
+	 * Creates a chain of <code>depth</code> beans
+	 *
+	 * @param depth The chain length
+	 * @return The first bean
+	 */
+	public static BenchBean deep(int depth) {
+		BenchBean root = new BenchBean("bean0", 0);
+		BenchBean bean = root;
+		for (int i = 1; i < depth; i++) {
+			bean.child = new BenchBean("bean" + i, i);
+			bean = bean.child;
+		}
+		return root;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	public BenchBean getChild() {
+		return child;
+	}
+
+	public BenchBean[] getChildren() {
+		return children;
+	}
+
+	public List<BenchBean> getItems() {
+		return items;
+	}
+
+	public int[] getValues() {
+		return values;
+	}
+}
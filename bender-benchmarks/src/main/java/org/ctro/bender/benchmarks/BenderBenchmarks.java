@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs the bender benchmarks with the GC profiler, so results include the allocation rate
+ * per operation next to throughput.
+ * <p>Arguments are the standard JMH command line options, i.e. a benchmark name pattern.
+ *
+ * @author Jordi Carretero
+ *
+ */
+public class BenderBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderSession;
+import org.ctro.bender.BenderSource;
+import org.ctro.bender.beans.BenderBeanSource;
+import org.ctro.bender.xml.BenderXmlSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Cost of {@link BenderSource#register(Class)} on an empty session.
+ * <p>The average time benchmarks measure registration once class metadata is warm. The single shot
+ * ones run one registration per fork, so they include the first time reflection data, method handles
+ * and accessors are created.
+ *
+ * @author Jordi Carretero
+ *
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationBenchmark {
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public BenderSession registerBean() throws BenderException {
+		BenderSession session = new BenderSession();
+		BenderBeanSource source = new BenderBeanSource(session, null);
+		source.register(BeanBenchmark.WideVisitor.class);
+		source.register(BeanBenchmark.DeepVisitor.class);
+		return session;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public BenderSession registerXml() throws BenderException {
+		BenderSession session = new BenderSession();
+		new BenderXmlSource(session, null).register(XmlBenchmark.FeedVisitor.class);
+		return session;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public BenderSession coldRegisterBean() throws BenderException {
+		return registerBean();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public BenderSession coldRegisterXml() throws BenderException {
+		return registerXml();
+	}
+}
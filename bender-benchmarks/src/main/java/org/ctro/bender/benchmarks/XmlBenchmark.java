@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderSession;
+import org.ctro.bender.BenderVisitor;
+import org.ctro.bender.xml.BenderXml;
+import org.ctro.bender.xml.BenderXmlSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of {@link BenderXmlSource} traversals over generated documents.
+ * <p>Documents are feeds of <code>size</code> items, half of them with an unbound subtree, generated
+ * in memory during setup.
+ *
+ * @author Jordi Carretero
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlBenchmark {
+
+	@Param({ "10", "10000" })
+	private int size;
+
+	@Param({ "SAX", "STAX" })
+	private BenderXmlSource.Engine engine;
+
+	private BenderSession session;
+
+	private byte[] document;
+
+	@Setup
+	public void setup() throws BenderException {
+		session = new BenderSession();
+		document = document(size);
+		new BenderXmlSource(session, null).register(FeedVisitor.class);
+	}
+
+	@Benchmark
+	public long feed() throws BenderException {
+		FeedVisitor visitor = new FeedVisitor();
+		BenderXmlSource source = new BenderXmlSource(session, new ByteArrayInputStream(document));
+		source.setEngine(engine);
+		source.accept(visitor);
+		return visitor.sum;
+	}
+
+	/**
+	 * Generates a feed document
+	 *
+	 * @param size The number of items
+	 * @return The UTF-8 document
+	 */
+	static byte[] document(int size) {
+		StringBuilder xml = new StringBuilder(size * 96);
+		xml.append("<feed>\n");
+		for (int i = 0; i < size; i++) {
+			xml.append("\t<item id=\"").append(i).append("\" type=\"")
+				.append(i % 2 == 0 ? "trade" : "quote").append("\" price=\"").append(i * 0.5).append("\">\n");
+			if (i % 2 != 0) {
+				xml.append("\t\t<meta><source name=\"bench\"/></meta>\n");
+			}
+			xml.append("\t\t<tag name=\"tag").append(i % 16).append("\"/>\n");
+			xml.append("\t</item>\n");
+		}
+		xml.append("</feed>\n");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static class FeedVisitor implements BenderVisitor {
+
+		long sum;
+
+		@BenderXml("/feed/item")
+		public void visitItem(@BenderXml("id") int id, @BenderXml("type") String type, 
+				@BenderXml("price") double price) {
+			sum += id + type.length() + (long) price;
+		}
+
+		@BenderXml("/feed/item/tag")
+		public void visitTag(@BenderXml("name") String name) {
+			sum += name.length();
+		}
+
+		@Override
+		public void visitEnd() {
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * <p>Annotation processor that generates a typed <code>org.ctro.bender.BenderDispatcher</code> for
+ * every visitor class with methods annotated with <code>@Bender</code> or <code>@BenderXml</code>.
+ * <p>The generated class is named <code>&lt;VisitorBinaryName&gt;$BenderDispatcher</code> and is
+ * picked up automatically by <code>BenderSource#register(Class)</code>. To enable it, add this
+ * module to the compile classpath of the visitors:
+ *
+ * <pre>{@code <dependency>
+ *	<groupId>org.ctro.bender</groupId>
+ *	<artifactId>bender-processor</artifactId>
+ *	<version>0.0.1-SNAPSHOT</version>
+ *	<scope>provided</scope>
+ *</dependency>}</pre>
+ *
+ * <p>Anonymous, local and private visitor classes cannot be referenced from generated code and are
+ * still bound through reflection at runtime.
+ *
+ * @author Jordi Carretero
+ *
+ */
+@SupportedAnnotationTypes({ BenderProcessor.BENDER, BenderProcessor.BENDER_XML })
+public class BenderProcessor extends AbstractProcessor {
+
+	static final String BENDER = "org.ctro.bender.Bender";
+
+	static final String BENDER_XML = "org.ctro.bender.xml.BenderXml";
+
+	static final String DISPATCHER = "org.ctro.bender.BenderDispatcher";
+
+	static final String SUFFIX = "$BenderDispatcher";
+
+	/**
+	 * Greatest arity with a specialized invoke method in the dispatcher
+	 */
+	static final int MAX_ARITY = 3;
+
+	private static final List<String> ANNOTATIONS = Arrays.asList(BENDER, BENDER_XML);
+
+	private final Set<String> generated = new HashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> visitors = new HashSet<>();
+		for (TypeElement annotation : annotations) {
+			for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (e.getKind() == ElementKind.METHOD) {
+					visitors.add((TypeElement) e.getEnclosingElement());
+				}
+			}
+		}
+		for (TypeElement visitor : visitors) {
+			String name = processingEnv.getElementUtils().getBinaryName(visitor) + SUFFIX;
+			if (isAccessible(visitor) && generated.add(name)) {
+				try {
+					generate(visitor, name);
+				} catch (IOException e) {
+					processingEnv.getMessager().printMessage(Kind.ERROR,
+							"Cannot write dispatcher " + name + ": " + e.getMessage(), visitor);
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean isAccessible(TypeElement visitor) {
+		Element e = visitor;
+		while (e instanceof TypeElement) {
+			TypeElement t = (TypeElement) e;
+			if (t.getModifiers().contains(Modifier.PRIVATE)
+					|| t.getNestingKind() == NestingKind.ANONYMOUS || t.getNestingKind() == NestingKind.LOCAL) {
+				return false;
+			}
+			e = t.getEnclosingElement();
+		}
+		return true;
+	}
+
+	private void generate(TypeElement visitor, String name) throws IOException {
+		// Annotated methods, including the inherited ones
+		Map<ExecutableElement, List<String>> methods = new LinkedHashMap<>();
+		for (Element e : processingEnv.getElementUtils().getAllMembers(visitor)) {
+			if (e.getKind() != ElementKind.METHOD || !e.getModifiers().contains(Modifier.PUBLIC)
+					|| e.getModifiers().contains(Modifier.STATIC)) {
+				continue;
+			}
+			List<String> names = new ArrayList<>();
+			for (AnnotationMirror a : e.getAnnotationMirrors()) {
+				String n = ((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().toString();
+				if (ANNOTATIONS.contains(n)) {
+					names.add(n);
+				}
+			}
+			if (!names.isEmpty()) {
+				ExecutableElement method = (ExecutableElement) e;
+				for (TypeMirror thrown : method.getThrownTypes()) {
+					if (!isException(thrown)) {
+						processingEnv.getMessager().printMessage(Kind.WARNING,
+								"Visitor method throws " + thrown + ", dispatcher not generated", method);
+						return;
+					}
+				}
+				methods.put(method, names);
+			}
+		}
+
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(visitor);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String simpleName = packageName.isEmpty() ? name : name.substring(packageName.length() + 1);
+		String visitorName = typeName(processingEnv.getTypeUtils().erasure(visitor.asType()));
+
+		List<String> annotations = new ArrayList<>();
+		List<ExecutableElement> entries = new ArrayList<>();
+		for (Map.Entry<ExecutableElement, List<String>> entry : methods.entrySet()) {
+			for (String annotation : entry.getValue()) {
+				annotations.add(annotation);
+				entries.add(entry.getKey());
+			}
+		}
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				packageName.isEmpty() ? simpleName : packageName + "." + simpleName, visitor);
+		try (PrintWriter out = new PrintWriter(file.openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * Dispatcher for {@link " + visitorName + "}.");
+			out.println(" * Generated by " + BenderProcessor.class.getName() + ", do not edit.");
+			out.println(" */");
+			out.println("public final class " + simpleName + " implements " + DISPATCHER + " {");
+			out.println();
+			out.print("\tprivate static final String[] ANNOTATIONS = {");
+			for (int i = 0; i < annotations.size(); i++) {
+				out.print((i == 0 ? " \"" : ", \"") + annotations.get(i) + "\"");
+			}
+			out.println(" };");
+			out.println();
+			out.print("\tprivate static final String[] NAMES = {");
+			for (int i = 0; i < entries.size(); i++) {
+				out.print((i == 0 ? " \"" : ", \"") + entries.get(i).getSimpleName() + "\"");
+			}
+			out.println(" };");
+			out.println();
+			out.println("\tprivate static final Class<?>[][] TYPES = {");
+			for (ExecutableElement method : entries) {
+				out.print("\t\t{");
+				List<? extends VariableElement> params = method.getParameters();
+				for (int i = 0; i < params.size(); i++) {
+					out.print((i == 0 ? " " : ", ") + typeName(erasure(params.get(i).asType())) + ".class");
+				}
+				out.println(" },");
+			}
+			out.println("\t};");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic int size() {");
+			out.println("\t\treturn NAMES.length;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String getAnnotationName(int index) {");
+			out.println("\t\treturn ANNOTATIONS[index];");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String getMethodName(int index) {");
+			out.println("\t\treturn NAMES[index];");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic Class<?>[] getParameterTypes(int index) {");
+			out.println("\t\treturn TYPES[index].clone();");
+			out.println("\t}");
+			writeInvoke(out, visitorName, entries, -1);
+			for (int arity = 0; arity <= MAX_ARITY; arity++) {
+				for (ExecutableElement method : entries) {
+					if (method.getParameters().size() == arity) {
+						writeInvoke(out, visitorName, entries, arity);
+						break;
+					}
+				}
+			}
+			out.println("}");
+		}
+	}
+
+	/**
+	 * Writes the invoke method for the given arity, or the one taking an arguments array if arity is -1
+	 */
+	private void writeInvoke(PrintWriter out, String visitorName, List<ExecutableElement> entries, int arity) {
+		StringBuilder params = new StringBuilder();
+		for (int j = 0; j < arity; j++) {
+			params.append(", Object arg").append(j);
+		}
+		out.println();
+		out.println("\t@Override");
+		out.println("\t@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+		out.println("\tpublic Object invoke(Object visitor, int index" + (arity < 0 ? ", Object[] args" : params) 
+				+ ") throws Exception {");
+		out.println("\t\t" + visitorName + " v = (" + visitorName + ") visitor;");
+		out.println("\t\tswitch (index) {");
+		for (int i = 0; i < entries.size(); i++) {
+			ExecutableElement method = entries.get(i);
+			List<? extends VariableElement> types = method.getParameters();
+			if (arity >= 0 && types.size() != arity) {
+				continue;
+			}
+			StringBuilder call = new StringBuilder();
+			call.append("v.").append(method.getSimpleName()).append('(');
+			for (int j = 0; j < types.size(); j++) {
+				if (j > 0) {
+					call.append(", ");
+				}
+				call.append('(').append(typeName(boxed(erasure(types.get(j).asType())))).append(") ")
+						.append(arity < 0 ? "args[" + j + "]" : "arg" + j);
+			}
+			call.append(')');
+			out.println("\t\tcase " + i + ":");
+			if (method.getReturnType().getKind() == TypeKind.VOID) {
+				out.println("\t\t\t" + call + ";");
+				out.println("\t\t\treturn null;");
+			} else {
+				out.println("\t\t\treturn " + call + ";");
+			}
+		}
+		out.println("\t\tdefault:");
+		if (arity < 0) {
+			out.println("\t\t\tthrow new IndexOutOfBoundsException(\"No visitor method with index \" + index);");
+		} else {
+			out.println("\t\t\tthrow new IllegalArgumentException(\"No visitor method with index \" + index + \" and "
+					+ arity + " parameters\");");
+		}
+		out.println("\t\t}");
+		out.println("\t}");
+	}
+
+	private boolean isException(TypeMirror type) {
+		TypeMirror exception = processingEnv.getElementUtils().getTypeElement("java.lang.Exception").asType();
+		TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType();
+		return processingEnv.getTypeUtils().isAssignable(type, exception)
+				|| processingEnv.getTypeUtils().isAssignable(type, error);
+	}
+
+	private TypeMirror erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type);
+	}
+
+	private TypeMirror boxed(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).asType();
+		}
+		return type;
+	}
+
+	/**
+	 * Source name of an erased type, without type annotations
+	 */
+	private static String typeName(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return type.getKind().name().toLowerCase();
+		} else if (type.getKind() == TypeKind.ARRAY) {
+			return typeName(((ArrayType) type).getComponentType()) + "[]";
+		} else if (type.getKind() == TypeKind.DECLARED) {
+			return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+		}
+		return type.toString();
+	}
+}
@@ -0,0 +1,110 @@
+package org.ctro.bender.processor;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.ctro.bender.BenderDispatcher;
+import org.ctro.bender.BenderSession;
+import org.ctro.bender.BenderVisitor;
+import org.ctro.bender.beans.BenderBeanSource;
+
+/**
+ * Unit test for BenderProcessor.
+ */
+public class BenderProcessorTest extends TestCase {
+
+	private static final String VISITOR = 
+			"package test;\n" +
+			"import java.util.List;\n" +
+			"import java.util.ArrayList;\n" +
+			"import org.ctro.bender.Bender;\n" +
+			"import org.ctro.bender.BenderVisitor;\n" +
+			"public class NameVisitor implements BenderVisitor {\n" +
+			"	public List<String> names = new ArrayList<>();\n" +
+			"	@Bender(\"this\")\n" +
+			"	public void visitName(@Bender(\"this\") String name, @Bender(\"isEmpty()\") boolean empty) {\n" +
+			"		names.add(name + empty);\n" +
+			"	}\n" +
+			"	public boolean dispatched;\n" +
+			"	@Bender(\"this\")\n" +
+			"	public void visitText(@Bender(\"this\") String name) {\n" +
+			"		for (StackTraceElement e : new Throwable().getStackTrace()) {\n" +
+			"			dispatched |= e.getClassName().endsWith(\"$BenderDispatcher\");\n" +
+			"		}\n" +
+			"	}\n" +
+			"	public void visitEnd() {}\n" +
+			"}\n";
+
+	/**
+	 * Output directory of the compiled visitor
+	 */
+	private File dir;
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName
+	 *            name of the test case
+	 */
+	public BenderProcessorTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(BenderProcessorTest.class);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (dir != null) {
+			try (Stream<Path> files = Files.walk(dir.toPath())) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	public void testDispatcher() throws Exception {
+		dir = Files.createTempDirectory("bender").toFile();
+		File src = new File(dir, "test/NameVisitor.java");
+		src.getParentFile().mkdirs();
+		Files.write(src.toPath(), VISITOR.getBytes(StandardCharsets.UTF_8));
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		List<String> args = Arrays.asList("-classpath", System.getProperty("java.class.path"), 
+				"-processor", BenderProcessor.class.getName(), "-d", dir.getPath(), src.getPath());
+		assertEquals(0, compiler.run(null, null, null, args.toArray(new String[args.size()])));
+		assertTrue(new File(dir, "test/NameVisitor$BenderDispatcher.class").exists());
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader())) {
+			Class<?> c = loader.loadClass("test.NameVisitor");
+			Object dispatcher = loader.loadClass("test.NameVisitor" + BenderDispatcher.SUFFIX)
+					.getDeclaredConstructor().newInstance();
+			assertTrue(dispatcher instanceof BenderDispatcher);
+			assertEquals(2, ((BenderDispatcher) dispatcher).size());
+
+			BenderVisitor visitor = (BenderVisitor) c.getDeclaredConstructor().newInstance();
+			new BenderBeanSource(new BenderSession(), "bender").accept(visitor);
+			assertEquals(Arrays.asList("benderfalse"), c.getField("names").get(visitor));
+			// Reference parameters are passed through the generated dispatcher
+			assertEquals(Boolean.TRUE, c.getField("dispatched").get(visitor));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+
+/**
+ * <p>View of the current event of an {@link XMLStreamReader} through the SAX interfaces used by the
+ * {@link BenderXml} bindings.
+ * <p>Attributes are read from the reader when requested, so one instance serves all the elements of
+ * a document without copying them. Qualified names are compared with the reader prefix and local name
+ * without building them, and the qualified names of prefixed elements and attributes are built once per
+ * document.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderStaxAttributes implements Attributes, Locator {
+
+	/**
+	 * Maximum number of cached qualified names, so documents with many distinct names do not grow the cache
+	 */
+	private static final int MAX_NAMES = 1024;
+
+	private final XMLStreamReader reader;
+
+	/**
+	 * Qualified names by prefix and local name
+	 */
+	private final Map<String, Map<String, String>> qNames = new HashMap<>();
+
+	private int names;
+
+	BenderStaxAttributes(XMLStreamReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @return The qualified name of the current element
+	 */
+	String getElementName() {
+		return qName(reader.getPrefix(), reader.getLocalName());
+	}
+
+	@Override
+	public int getLength() {
+		return reader.getAttributeCount();
+	}
+
+	@Override
+	public String getURI(int index) {
+		String uri = reader.getAttributeNamespace(index);
+		return uri == null ? "" : uri;
+	}
+
+	@Override
+	public String getLocalName(int index) {
+		return reader.getAttributeLocalName(index);
+	}
+
+	@Override
+	public String getQName(int index) {
+		return qName(reader.getAttributePrefix(index), reader.getAttributeLocalName(index));
+	}
+
+	@Override
+	public String getType(int index) {
+		return reader.getAttributeType(index);
+	}
+
+	@Override
+	public String getValue(int index) {
+		return reader.getAttributeValue(index);
+	}
+
+	@Override
+	public int getIndex(String uri, String localName) {
+		int length = reader.getAttributeCount();
+		for (int i = 0; i < length; i++) {
+			if (localName.equals(reader.getAttributeLocalName(i)) && uri.equals(getURI(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int getIndex(String qName) {
+		int length = reader.getAttributeCount();
+		for (int i = 0; i < length; i++) {
+			if (isQName(i, qName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String getType(String uri, String localName) {
+		int i = getIndex(uri, localName);
+		return i < 0 ? null : reader.getAttributeType(i);
+	}
+
+	@Override
+	public String getType(String qName) {
+		int i = getIndex(qName);
+		return i < 0 ? null : reader.getAttributeType(i);
+	}
+
+	@Override
+	public String getValue(String uri, String localName) {
+		int i = getIndex(uri, localName);
+		return i < 0 ? null : reader.getAttributeValue(i);
+	}
+
+	@Override
+	public String getValue(String qName) {
+		int i = getIndex(qName);
+		return i < 0 ? null : reader.getAttributeValue(i);
+	}
+
+	private String qName(String prefix, String name) {
+		if (prefix == null || prefix.isEmpty()) {
+			return name;
+		}
+		Map<String, String> byName = qNames.get(prefix);
+		String qName = byName == null ? null : byName.get(name);
+		if (qName == null) {
+			qName = prefix + ":" + name;
+			if (names < MAX_NAMES) {
+				if (byName == null) {
+					qNames.put(prefix, byName = new HashMap<>());
+				}
+				byName.put(name, qName);
+				names++;
+			}
+		}
+		return qName;
+	}
+
+	private boolean isQName(int index, String qName) {
+		String prefix = reader.getAttributePrefix(index);
+		String name = reader.getAttributeLocalName(index);
+		if (prefix == null || prefix.isEmpty()) {
+			return name.equals(qName);
+		}
+		int length = prefix.length();
+		return qName.length() == length + 1 + name.length() && qName.startsWith(prefix)
+				&& qName.charAt(length) == ':' && qName.endsWith(name);
+	}
+
+	@Override
+	public String getPublicId() {
+		return reader.getLocation().getPublicId();
+	}
+
+	@Override
+	public String getSystemId() {
+		return reader.getLocation().getSystemId();
+	}
+
+	@Override
+	public int getLineNumber() {
+		Location location = reader.getLocation();
+		return location == null ? -1 : location.getLineNumber();
+	}
+
+	@Override
+	public int getColumnNumber() {
+		Location location = reader.getLocation();
+		return location == null ? -1 : location.getColumnNumber();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import org.ctro.bender.BenderException;
+import org.xml.sax.Attributes;
+
+/**
+ * <p>Attribute binded to a visitor method parameter, compiled from its {@link BenderXml} key.
+ * <p>Attributes are binded by qualified name, optionally preceded by <code>@</code>, or by namespace
+ * URI and local name with the <code>{uri}name</code> notation, which requires a namespace aware parser.
+ * <p>The position where the attribute was last found is cached and checked first: producers usually
+ * write the attributes of an element in the same order, so the lookup only compares the name at that
+ * position, by identity first since parsers intern attribute names. Missing attributes are reported as
+ * <code>null</code> without allocating.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlAttribute {
+
+	private final String qName;
+
+	private final String uri;
+
+	private final String localName;
+
+	/**
+	 * Position of the last attribute found. Reads and writes of an int are atomic, and the name is
+	 * checked before using it, so parameters shared by several threads need no synchronization.
+	 */
+	private int index;
+
+	private BenderXmlAttribute(String qName, String uri, String localName) {
+		this.qName = qName;
+		this.uri = uri;
+		this.localName = localName;
+	}
+
+	/**
+	 * Compiles the given parameter key
+	 *
+	 * @param key The parameter key
+	 * @return The compiled attribute
+	 * @throws BenderException If the key is not valid
+	 */
+	static BenderXmlAttribute compile(String key) throws BenderException {
+		String name = key.trim();
+		if (name.startsWith("@")) {
+			name = name.substring(1);
+		}
+		if (name.startsWith("{")) {
+			int end = name.indexOf('}');
+			if (end < 0 || end == name.length() - 1) {
+				throw new BenderException("Invalid attribute name " + key);
+			}
+			return new BenderXmlAttribute(null, name.substring(1, end), name.substring(end + 1).intern());
+		} else if (name.isEmpty()) {
+			throw new BenderException("Empty attribute name");
+		}
+		return new BenderXmlAttribute(name.intern(), null, null);
+	}
+
+	/**
+	 * Finds the attribute in the given list
+	 *
+	 * @param attributes The element attributes
+	 * @return The attribute index or <code>-1</code> if the element does not have it
+	 */
+	int indexOf(Attributes attributes) {
+		int i = index;
+		if (i < attributes.getLength() && matches(attributes, i)) {
+			return i;
+		}
+		i = uri == null ? attributes.getIndex(qName) : attributes.getIndex(uri, localName);
+		if (i >= 0) {
+			index = i;
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the attribute value
+	 *
+	 * @param attributes The element attributes
+	 * @return The value or <code>null</code> if the element does not have the attribute
+	 */
+	String getValue(Attributes attributes) {
+		int i = indexOf(attributes);
+		return i < 0 ? null : attributes.getValue(i);
+	}
+
+	private boolean matches(Attributes attributes, int i) {
+		if (uri == null) {
+			String name = attributes.getQName(i);
+			return name == qName || qName.equals(name);
+		}
+		String name = attributes.getLocalName(i);
+		return (name == localName || localName.equals(name)) && uri.equals(attributes.getURI(i));
+	}
+
+	@Override
+	public String toString() {
+		return uri == null ? qName : "{" + uri + "}" + localName;
+	}
+}
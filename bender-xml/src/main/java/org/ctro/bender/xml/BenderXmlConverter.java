@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+/**
+ * <p>Converts attribute values and element text to the type of a visitor method parameter.
+ * <p>Converters are registered in {@link BenderXmlConverters} and resolved once per parameter when the
+ * visitor is registered. The value can be a reusable text buffer that is only valid during the call, so
+ * converters must not keep it.
+ *
+ * @author Jordi Carretero
+ *
+ * @param <T> The parameter type
+ *
+ * @see BenderXmlConverters
+ */
+@FunctionalInterface
+public interface BenderXmlConverter<T> {
+
+	/**
+	 * Converts a value
+	 *
+	 * @param value The attribute value or element text, or <code>null</code> if it is missing
+	 * @return The converted value
+	 * @throws IllegalArgumentException If the value cannot be converted
+	 */
+	T convert(CharSequence value);
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ctro.bender.BenderException;
+
+/**
+ * <p>Registry of the {@link BenderXmlConverter}s of visitor method parameter types, set on the sources
+ * with {@link BenderXmlSource#setConverters(BenderXmlConverters)}.
+ * <p>Converters are resolved once per parameter when a visitor is registered, so converters must be
+ * registered before the visitors using them. Registries start with the built-in converters, which are
+ * the only ones of sources without a registry. Built-in converters handle strings, primitives and their
+ * wrappers, <code>BigInteger</code>, <code>BigDecimal</code>, enums by constant name and the
+ * <code>java.time</code> types with ISO formats. Other types are converted with their static
+ * <code>parse(CharSequence)</code>, <code>valueOf(String)</code> or <code>parse(String)</code> method
+ * or their <code>String</code> constructor.
+ * <p>Missing or empty values are 0 or <code>false</code> for primitives and <code>null</code> for other
+ * types, except strings. Integral numbers are parsed from the characters without creating strings, and so
+ * are decimal numbers with few digits and no exponent. <code>CharSequence</code> and <code>Object</code>
+ * parameters receive the value itself, which is only valid during the visitor method call when it is
+ * element text.
+ *
+ * <pre>{@code
+ * 	BenderXmlConverters converters = new BenderXmlConverters();
+ *converters.register(Money.class, Money::parse);
+ *source.setConverters(converters);}</pre>
+ *
+ * @author Jordi Carretero
+ *
+ */
+public final class BenderXmlConverters {
+
+	private static final Map<Class<?>, BenderXmlConverter<?>> BUILT_IN = new HashMap<>();
+
+	/**
+	 * Largest mantissas and exponents of decimals converted exactly by a single division
+	 */
+	private static final long DOUBLE_MANTISSA = 1L << 53, FLOAT_MANTISSA = 1L << 24;
+
+	private static final int DOUBLE_EXPONENT = 22, FLOAT_EXPONENT = 10;
+
+	private static final double[] DOUBLE_POWERS = new double[DOUBLE_EXPONENT + 1];
+
+	private static final float[] FLOAT_POWERS = new float[FLOAT_EXPONENT + 1];
+
+	static {
+		for (int i = 0; i < DOUBLE_POWERS.length; i++) {
+			DOUBLE_POWERS[i] = i == 0 ? 1 : DOUBLE_POWERS[i - 1] * 10;
+		}
+		for (int i = 0; i < FLOAT_POWERS.length; i++) {
+			FLOAT_POWERS[i] = i == 0 ? 1 : FLOAT_POWERS[i - 1] * 10;
+		}
+		BUILT_IN.put(String.class, v -> v == null ? null : v.toString());
+		BUILT_IN.put(CharSequence.class, v -> v);
+		BUILT_IN.put(Object.class, v -> v);
+		BUILT_IN.put(boolean.class, BenderXmlConverters::toBoolean);
+		BUILT_IN.put(Boolean.class, v -> isEmpty(v) ? null : toBoolean(v));
+		BUILT_IN.put(char.class, BenderXmlConverters::toChar);
+		BUILT_IN.put(Character.class, v -> isEmpty(v) ? null : v.charAt(0));
+		BUILT_IN.put(byte.class, BenderXmlConverters::toByte);
+		BUILT_IN.put(Byte.class, v -> isEmpty(v) ? null : toByte(v));
+		BUILT_IN.put(short.class, BenderXmlConverters::toShort);
+		BUILT_IN.put(Short.class, v -> isEmpty(v) ? null : toShort(v));
+		BUILT_IN.put(int.class, BenderXmlConverters::toInt);
+		BUILT_IN.put(Integer.class, v -> isEmpty(v) ? null : toInt(v));
+		BUILT_IN.put(long.class, BenderXmlConverters::toLong);
+		BUILT_IN.put(Long.class, v -> isEmpty(v) ? null : toLong(v));
+		BUILT_IN.put(float.class, BenderXmlConverters::toFloat);
+		BUILT_IN.put(Float.class, v -> isEmpty(v) ? null : toFloat(v));
+		BUILT_IN.put(double.class, BenderXmlConverters::toDouble);
+		BUILT_IN.put(Double.class, v -> isEmpty(v) ? null : toDouble(v));
+		BUILT_IN.put(BigInteger.class, v -> isEmpty(v) ? null : new BigInteger(v.toString()));
+		BUILT_IN.put(BigDecimal.class, v -> isEmpty(v) ? null : new BigDecimal(v.toString()));
+		BUILT_IN.put(LocalDate.class, v -> isEmpty(v) ? null : LocalDate.parse(v));
+		BUILT_IN.put(LocalTime.class, v -> isEmpty(v) ? null : LocalTime.parse(v));
+		BUILT_IN.put(LocalDateTime.class, v -> isEmpty(v) ? null : LocalDateTime.parse(v));
+		BUILT_IN.put(OffsetDateTime.class, v -> isEmpty(v) ? null : OffsetDateTime.parse(v));
+		BUILT_IN.put(ZonedDateTime.class, v -> isEmpty(v) ? null : ZonedDateTime.parse(v));
+		BUILT_IN.put(Instant.class, v -> isEmpty(v) ? null : Instant.parse(v));
+		BUILT_IN.put(Duration.class, v -> isEmpty(v) ? null : Duration.parse(v));
+		BUILT_IN.put(Period.class, v -> isEmpty(v) ? null : Period.parse(v));
+	}
+
+	/**
+	 * Registry of the sources without their own converters
+	 */
+	static final BenderXmlConverters DEFAULT = new BenderXmlConverters();
+
+	private final ConcurrentMap<Class<?>, BenderXmlConverter<?>> converters = new ConcurrentHashMap<>(BUILT_IN);
+
+	/**
+	 * Creates a registry with the built-in converters
+	 */
+	public BenderXmlConverters() {
+	}
+
+	/**
+	 * Registers the converter of a type, replacing the current one. Visitors registered before are not
+	 * affected.
+	 *
+	 * @param type The parameter type
+	 * @param converter The converter
+	 */
+	public <T> void register(Class<T> type, BenderXmlConverter<? extends T> converter) {
+		if (type == null || converter == null) {
+			throw new IllegalArgumentException("Type and converter cannot be null");
+		}
+		converters.put(type, converter);
+	}
+
+	/**
+	 * Gets the converter of a type, creating it for enums and types with a conversion method
+	 *
+	 * @param type The parameter type
+	 * @return The converter
+	 * @throws BenderException If the type cannot be converted
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> BenderXmlConverter<T> get(Class<T> type) throws BenderException {
+		BenderXmlConverter<?> converter = converters.get(type);
+		if (converter == null) {
+			converter = type.isEnum() ? enumConverter(type) : methodConverter(type);
+			if (converter == null) {
+				throw new BenderException("No converter for parameter type " + type.getName());
+			}
+			BenderXmlConverter<?> c = converters.putIfAbsent(type, converter);
+			if (c != null) {
+				converter = c;
+			}
+		}
+		return (BenderXmlConverter<T>) converter;
+	}
+
+	/**
+	 * @return <code>true</code> if the given converter is the built-in converter of the type
+	 */
+	static boolean isBuiltIn(Class<?> type, BenderXmlConverter<?> converter) {
+		return BUILT_IN.get(type) == converter;
+	}
+
+	private static BenderXmlConverter<?> enumConverter(Class<?> type) {
+		Enum<?>[] constants = (Enum<?>[]) type.getEnumConstants();
+		String[] names = new String[constants.length];
+		for (int i = 0; i < constants.length; i++) {
+			names[i] = constants[i].name();
+		}
+		return v -> {
+			if (isEmpty(v)) {
+				return null;
+			}
+			for (int i = 0; i < names.length; i++) {
+				if (equals(names[i], v)) {
+					return constants[i];
+				}
+			}
+			throw new IllegalArgumentException("No constant " + type.getName() + "." + v);
+		};
+	}
+
+	private static BenderXmlConverter<?> methodConverter(Class<?> type) {
+		Method method = factory(type, "parse", CharSequence.class);
+		boolean text = method != null;
+		if (method == null) {
+			method = factory(type, "valueOf", String.class);
+		}
+		if (method == null) {
+			method = factory(type, "parse", String.class);
+		}
+		if (method != null) {
+			Method m = method;
+			return v -> {
+				if (isEmpty(v)) {
+					return null;
+				}
+				try {
+					return m.invoke(null, text ? v : v.toString());
+				} catch (InvocationTargetException e) {
+					throw new IllegalArgumentException("Cannot convert '" + v + "' to " + type.getName(), e.getCause());
+				} catch (IllegalAccessException e) {
+					throw new IllegalArgumentException("Cannot convert '" + v + "' to " + type.getName(), e);
+				}
+			};
+		}
+		try {
+			Constructor<?> c = type.getConstructor(String.class);
+			if (Modifier.isAbstract(type.getModifiers())) {
+				return null;
+			}
+			return v -> {
+				if (isEmpty(v)) {
+					return null;
+				}
+				try {
+					return c.newInstance(v.toString());
+				} catch (InvocationTargetException e) {
+					throw new IllegalArgumentException("Cannot convert '" + v + "' to " + type.getName(), e.getCause());
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalArgumentException("Cannot convert '" + v + "' to " + type.getName(), e);
+				}
+			};
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Method factory(Class<?> type, String name, Class<?> param) {
+		try {
+			Method m = type.getMethod(name, param);
+			return Modifier.isStatic(m.getModifiers()) && type.isAssignableFrom(m.getReturnType()) ? m : null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static boolean isEmpty(CharSequence value) {
+		return value == null || value.length() == 0;
+	}
+
+	private static boolean equals(String s, CharSequence value) {
+		int length = s.length();
+		if (value.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (s.charAt(i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Primitive parsers, also called by the invokers to pass primitives without boxing
+	 */
+
+	static boolean toBoolean(CharSequence value) {
+		if (value == null || value.length() != 4) {
+			return false;
+		}
+		return Character.toLowerCase(value.charAt(0)) == 't' && Character.toLowerCase(value.charAt(1)) == 'r'
+				&& Character.toLowerCase(value.charAt(2)) == 'u' && Character.toLowerCase(value.charAt(3)) == 'e';
+	}
+
+	static char toChar(CharSequence value) {
+		return isEmpty(value) ? '0' : value.charAt(0);
+	}
+
+	static byte toByte(CharSequence value) {
+		return (byte) parse(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+	}
+
+	static short toShort(CharSequence value) {
+		return (short) parse(value, Short.MIN_VALUE, Short.MAX_VALUE);
+	}
+
+	static int toInt(CharSequence value) {
+		return (int) parse(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	static long toLong(CharSequence value) {
+		return parse(value, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	static float toFloat(CharSequence value) {
+		if (isEmpty(value)) {
+			return 0;
+		}
+		long d = decimal(value, FLOAT_MANTISSA, FLOAT_EXPONENT);
+		if (d < 0) {
+			return Float.parseFloat(value.toString());
+		}
+		float f = (d >>> 5) / FLOAT_POWERS[(int) d & 31];
+		return value.charAt(0) == '-' ? -f : f;
+	}
+
+	static double toDouble(CharSequence value) {
+		if (isEmpty(value)) {
+			return 0;
+		}
+		long d = decimal(value, DOUBLE_MANTISSA, DOUBLE_EXPONENT);
+		if (d < 0) {
+			return Double.parseDouble(value.toString());
+		}
+		double f = (d >>> 5) / DOUBLE_POWERS[(int) d & 31];
+		return value.charAt(0) == '-' ? -f : f;
+	}
+
+	/**
+	 * Parses a decimal integer in the given range
+	 */
+	private static long parse(CharSequence value, long min, long max) {
+		if (isEmpty(value)) {
+			return 0;
+		}
+		int length = value.length();
+		int i = 0;
+		char first = value.charAt(0);
+		boolean negative = first == '-';
+		if (negative || first == '+') {
+			i++;
+		}
+		if (i == length) {
+			throw new NumberFormatException("For input string: \"" + value + "\"");
+		}
+		// Accumulated negatively, since the negative range is larger
+		long result = 0;
+		for (; i < length; i++) {
+			int d = Character.digit(value.charAt(i), 10);
+			if (d < 0 || result < (Long.MIN_VALUE + d) / 10) {
+				throw new NumberFormatException("For input string: \"" + value + "\"");
+			}
+			result = result * 10 - d;
+		}
+		if (!negative) {
+			if (result == Long.MIN_VALUE) {
+				throw new NumberFormatException("Value out of range: \"" + value + "\"");
+			}
+			result = -result;
+		}
+		if (result < min || result > max) {
+			throw new NumberFormatException("Value out of range: \"" + value + "\"");
+		}
+		return result;
+	}
+
+	/**
+	 * Scans a plain decimal number, without exponent, whose unsigned mantissa and number of fraction digits
+	 * do not exceed the given limits. Dividing such a mantissa by the power of ten of its exponent is
+	 * correctly rounded, since both are exact.
+	 *
+	 * @return The mantissa shifted 5 bits left plus the number of fraction digits, or <code>-1</code> if the
+	 * number must be parsed by the JDK
+	 */
+	private static long decimal(CharSequence value, long maxMantissa, int maxExponent) {
+		int length = value.length();
+		int i = 0;
+		char first = value.charAt(0);
+		if (first == '-' || first == '+') {
+			i++;
+		}
+		long mantissa = 0;
+		int exponent = -1;
+		int digits = 0;
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (mantissa > maxMantissa) {
+					return -1;
+				}
+				if (exponent >= 0 && ++exponent > maxExponent) {
+					return -1;
+				}
+			} else if (c == '.' && exponent < 0) {
+				exponent = 0;
+			} else {
+				return -1;
+			}
+		}
+		if (digits == 0) {
+			return -1;
+		}
+		return mantissa << 5 | Math.max(exponent, 0);
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+import org.ctro.bender.BenderControl;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.MethodBinding;
+import org.ctro.bender.MethodBinding.ParamBinding;
+import org.xml.sax.Attributes;
+
+/**
+ * <p>Binding of a visitor method with text parameters, invoked when its element ends.
+ * <p>Parameters keyed <code>text()</code> receive the text of the element and parameters keyed
+ * <code>name/text()</code> the text of its first <code>name</code> child. Attribute parameters are read
+ * when the element starts, since the parser reuses its attributes, and the method is invoked at the end
+ * tag once the text is complete. Only the text directly inside the element or the child is collected.
+ * <p>Values are kept in a {@link State} for each element depth, reused by all the elements at that depth,
+ * and the text is collected in {@link BenderXmlText} buffers. The invoker reads the values array and
+ * parses each value with the parser of its parameter type, so <code>CharSequence</code> parameters and
+ * integral primitives are passed without allocating.
+ * <p>Deferred methods cannot return visitors, since the content of their element has already been parsed.
+ * For the same reason returning {@link BenderControl#SKIP} has no effect, while {@link BenderControl#TERMINATE}
+ * stops the traversal after the element.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlDeferred {
+
+	/**
+	 * Type of the invokers
+	 */
+	static final MethodType TYPE = MethodType.methodType(Object.class, Object.class, CharSequence[].class);
+
+	/**
+	 * Text parameter key
+	 */
+	static final class Text {
+
+		private static final String SUFFIX = "text()";
+
+		/**
+		 * Name of the child element or <code>null</code> for the text of the element itself
+		 */
+		private final String child;
+
+		private Text(String child) {
+			this.child = child;
+		}
+
+		/**
+		 * Compiles the given parameter key
+		 *
+		 * @param key The parameter key
+		 * @return The compiled key or <code>null</code> if it is not a text key
+		 * @throws BenderException If the child name is not valid
+		 */
+		static Text compile(String key) throws BenderException {
+			String k = key.trim();
+			if (!k.endsWith(SUFFIX)) {
+				return null;
+			}
+			k = k.substring(0, k.length() - SUFFIX.length()).trim();
+			if (k.isEmpty()) {
+				return new Text(null);
+			} else if (!k.endsWith("/")) {
+				return null;
+			}
+			String child = k.substring(0, k.length() - 1).trim();
+			if (child.isEmpty() || child.indexOf('/') >= 0 || child.indexOf('[') >= 0) {
+				throw new BenderException("Invalid text key " + key);
+			}
+			return new Text(child.intern());
+		}
+
+		@Override
+		public String toString() {
+			return child == null ? SUFFIX : child + "/" + SUFFIX;
+		}
+	}
+
+	private final MethodBinding<BenderXml> binding;
+
+	/**
+	 * Attribute of each parameter or <code>null</code> for text parameters
+	 */
+	private final BenderXmlAttribute[] attributes;
+
+	/**
+	 * Child element of each child text parameter
+	 */
+	private final String[] children;
+
+	/**
+	 * Parameters with the text of the element
+	 */
+	private final boolean[] own;
+
+	private final MethodHandle invoker;
+
+	private BenderXmlDeferred(MethodBinding<BenderXml> binding) throws BenderException {
+		this.binding = binding;
+		ParamBinding<BenderXml>[] params = binding.getParamBindings();
+		attributes = new BenderXmlAttribute[params.length];
+		children = new String[params.length];
+		own = new boolean[params.length];
+		for (int i = 0; i < params.length; i++) {
+			BenderXmlParam param = (BenderXmlParam) params[i].getPath();
+			if (param.getAttribute() != null) {
+				attributes[i] = param.getAttribute();
+			} else if (param.getText().child == null) {
+				own[i] = true;
+			} else {
+				children[i] = param.getText().child;
+			}
+		}
+		invoker = binding.getBatchSize() > 0 ? null : createInvoker(binding);
+	}
+
+	/**
+	 * Creates the deferred binding of the given binding
+	 *
+	 * @param binding The method binding
+	 * @return The deferred binding or <code>null</code> if the method has no text parameters
+	 * @throws BenderException If the method returns a visitor
+	 */
+	static BenderXmlDeferred create(MethodBinding<BenderXml> binding) throws BenderException {
+		for (ParamBinding<BenderXml> param : binding.getParamBindings()) {
+			if (((BenderXmlParam) param.getPath()).getText() != null) {
+				Class<?> type = binding.getMethod().getReturnType();
+				if (type != void.class && type != BenderControl.class) {
+					throw new BenderException("Visitor method " + binding.getMethod().getName()
+							+ " with text parameters can only return void or BenderControl");
+				}
+				return new BenderXmlDeferred(binding);
+			}
+		}
+		return null;
+	}
+
+	private static MethodHandle createInvoker(MethodBinding<BenderXml> binding) throws BenderException {
+		ParamBinding<BenderXml>[] params = binding.getParamBindings();
+		MethodHandle method = binding.getExactHandle();
+		MethodHandle[] readers = new MethodHandle[params.length];
+		int[] reorder = new int[params.length + 1];
+		MethodHandle element = MethodHandles.arrayElementGetter(CharSequence[].class);
+		try {
+			for (int i = 0; i < params.length; i++) {
+				MethodHandle parser = BenderXmlInvoker.parser(params[i].getType(), (BenderXmlParam) params[i].getPath());
+				readers[i] = MethodHandles.filterReturnValue(MethodHandles.insertArguments(element, 1, i), parser);
+				reorder[i + 1] = 1;
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new BenderException("Cannot convert parameters of visitor method " + binding.getMethod().getName(), e);
+		}
+		MethodHandle h = MethodHandles.filterArguments(method, 1, readers);
+		return MethodHandles.permuteArguments(h, TYPE, reorder);
+	}
+
+	/**
+	 * Values of a deferred binding for an open element
+	 */
+	static final class State {
+
+		private BenderXmlDeferred deferred;
+
+		private Object visitor;
+
+		private CharSequence[] values = new CharSequence[4];
+
+		private BenderXmlText[] texts = new BenderXmlText[4];
+
+		/**
+		 * Text of the element or <code>null</code> if it is not bound
+		 */
+		private BenderXmlText own;
+
+		/**
+		 * Starts collecting the values of an element
+		 *
+		 * @param deferred The deferred binding
+		 * @param visitor The visitor of the binding
+		 * @param attrs The element attributes
+		 */
+		void start(BenderXmlDeferred deferred, Object visitor, Attributes attrs) {
+			int length = deferred.attributes.length;
+			if (values.length < length) {
+				values = new CharSequence[length];
+				texts = Arrays.copyOf(texts, length);
+			}
+			this.deferred = deferred;
+			this.visitor = visitor;
+			own = null;
+			for (int i = 0; i < length; i++) {
+				BenderXmlAttribute attribute = deferred.attributes[i];
+				if (attribute != null) {
+					values[i] = attribute.getValue(attrs);
+				} else if (deferred.own[i]) {
+					if (own == null) {
+						own = text(i);
+					}
+					values[i] = own;
+				} else {
+					values[i] = null;
+				}
+			}
+		}
+
+		/**
+		 * @return The binding of the open element
+		 */
+		MethodBinding<BenderXml> getBinding() {
+			return deferred.binding;
+		}
+
+		/**
+		 * @return <code>true</code> if the element of this state is open
+		 */
+		boolean isOpen() {
+			return deferred != null;
+		}
+
+		/**
+		 * @return The buffer of the element text or <code>null</code> if it is not bound
+		 */
+		BenderXmlText getText() {
+			return own;
+		}
+
+		/**
+		 * Gets the buffer of a started child element
+		 *
+		 * @param name The child name
+		 * @return The buffer of the child text or <code>null</code> if it is not bound or has already been read
+		 */
+		BenderXmlText child(String name) {
+			if (deferred == null) {
+				return null;
+			}
+			String[] children = deferred.children;
+			for (int i = 0; i < children.length; i++) {
+				if (children[i] != null && values[i] == null && (children[i] == name || children[i].equals(name))) {
+					BenderXmlText text = text(i);
+					values[i] = text;
+					return text;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Invokes the deferred binding
+		 *
+		 * @param source The source, for batched bindings
+		 * @return The method result
+		 */
+		Object invoke(BenderXmlSource source) throws Throwable {
+			BenderXmlDeferred d = deferred;
+			CharSequence[] v = values;
+			for (int i = 0; i < d.attributes.length; i++) {
+				if (v[i] instanceof BenderXmlText) {
+					((BenderXmlText) v[i]).trim();
+				}
+			}
+			if (d.invoker == null) {
+				source.batch(d.binding, visitor, v);
+				return null;
+			}
+			return (Object) d.invoker.invokeExact(visitor, v);
+		}
+
+		/**
+		 * Releases the values of the element
+		 */
+		void clear() {
+			deferred = null;
+			visitor = null;
+			own = null;
+			Arrays.fill(values, null);
+		}
+
+		private BenderXmlText text(int i) {
+			BenderXmlText text = texts[i];
+			if (text == null) {
+				texts[i] = text = new BenderXmlText();
+			} else {
+				text.clear();
+			}
+			return text;
+		}
+	}
+}
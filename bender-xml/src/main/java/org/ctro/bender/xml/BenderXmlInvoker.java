@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.ctro.bender.BenderException;
+import org.ctro.bender.MethodBinding;
+import org.ctro.bender.MethodBinding.ParamBinding;
+import org.xml.sax.Attributes;
+
+/**
+ * <p>Creates invokers of {@link BenderXml} bindings with primitive parameters.
+ * <p>Invokers are method handles typed as <code>(Object visitor, Attributes attributes)Object</code> that 
+ * read each attribute with the {@link BenderXmlAttribute} of its parameter, parse it with the primitive 
+ * parser of the parameter type, or its {@link BenderXmlConverter} for other types, and call the visitor 
+ * method with its exact signature, so parsed values are never boxed.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlInvoker {
+
+	/**
+	 * Type of the created invokers
+	 */
+	static final MethodType TYPE = MethodType.methodType(Object.class, Object.class, Attributes.class);
+
+	private static final MethodHandle GET_VALUE;
+
+	private static final MethodHandle CONVERT;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			GET_VALUE = lookup.findVirtual(BenderXmlAttribute.class, "getValue", 
+					MethodType.methodType(String.class, Attributes.class));
+			CONVERT = lookup.findVirtual(BenderXmlConverter.class, "convert", 
+					MethodType.methodType(Object.class, CharSequence.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private BenderXmlInvoker() {
+	}
+
+	/**
+	 * Creates the invoker of the given binding
+	 *
+	 * @param binding The method binding
+	 * @return The invoker or <code>null</code> if the method has no primitive parameters or is batched
+	 * @throws BenderException
+	 */
+	static MethodHandle create(MethodBinding<BenderXml> binding) throws BenderException {
+		if (!isSpecialized(binding)) {
+			return null;
+		}
+		ParamBinding<BenderXml>[] params = binding.getParamBindings();
+		MethodHandle method = binding.getExactHandle();
+		MethodHandle[] readers = new MethodHandle[params.length];
+		int[] reorder = new int[params.length + 1];
+		try {
+			for (int i = 0; i < params.length; i++) {
+				BenderXmlParam param = (BenderXmlParam) params[i].getPath();
+				MethodHandle reader = GET_VALUE.bindTo(param.getAttribute())
+						.asType(MethodType.methodType(CharSequence.class, Attributes.class));
+				readers[i] = MethodHandles.filterReturnValue(reader, parser(params[i].getType(), param));
+				reorder[i + 1] = 1;
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new BenderException("Cannot convert parameters of visitor method " + binding.getMethod().getName(), e);
+		}
+		MethodHandle h = MethodHandles.filterArguments(method, 1, readers);
+		return MethodHandles.permuteArguments(h, TYPE, reorder);
+	}
+
+	private static boolean isSpecialized(MethodBinding<BenderXml> binding) {
+		if (binding.getBatchSize() > 0) {
+			return false;
+		}
+		for (ParamBinding<BenderXml> param : binding.getParamBindings()) {
+			if (param.getType().isPrimitive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the parser of a parameter: the primitive parser of {@link BenderXmlConverters} for primitive 
+	 * types with the built-in converter or the converter of the parameter otherwise
+	 */
+	static MethodHandle parser(Class<?> type, BenderXmlParam param) throws ReflectiveOperationException {
+		if (!type.isPrimitive() || !BenderXmlConverters.isBuiltIn(type, param.getConverter())) {
+			return CONVERT.bindTo(param.getConverter())
+					.asType(MethodType.methodType(type.isPrimitive() ? type : Object.class, CharSequence.class));
+		}
+		String name = type.getName();
+		return MethodHandles.lookup().findStatic(BenderXmlConverters.class, 
+				"to" + Character.toUpperCase(name.charAt(0)) + name.substring(1), 
+				MethodType.methodType(type, CharSequence.class));
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import org.ctro.bender.BenderException;
+import org.ctro.bender.MethodBatch;
+
+/**
+ * <p>Visitor method parameter compiled from its {@link BenderXml} key: the attribute or text it is bound to
+ * and the converter of its type, resolved once when the visitor is registered.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlParam {
+
+	private final BenderXmlAttribute attribute;
+
+	private final BenderXmlDeferred.Text text;
+
+	private final BenderXmlConverter<?> converter;
+
+	private final BenderXmlConverters converters;
+
+	private final Class<?> primitive;
+
+	private BenderXmlParam(BenderXmlAttribute attribute, BenderXmlDeferred.Text text, BenderXmlConverters converters, 
+			Class<?> type) throws BenderException {
+		this.attribute = attribute;
+		this.text = text;
+		this.converter = converters.get(type);
+		this.converters = converters;
+		this.primitive = (type == int.class || type == long.class || type == double.class) 
+				&& BenderXmlConverters.isBuiltIn(type, converter) ? type : null;
+	}
+
+	/**
+	 * Compiles the given parameter key
+	 *
+	 * @param key The parameter key
+	 * @param type The parameter type
+	 * @param converters The registry of the converter
+	 * @return The compiled parameter
+	 * @throws BenderException If the key is not valid or the type has no converter
+	 */
+	static BenderXmlParam compile(String key, Class<?> type, BenderXmlConverters converters) throws BenderException {
+		BenderXmlDeferred.Text text = BenderXmlDeferred.Text.compile(key);
+		if (text != null) {
+			return new BenderXmlParam(null, text, converters, type);
+		}
+		return new BenderXmlParam(BenderXmlAttribute.compile(key), null, converters, type);
+	}
+
+	/**
+	 * @return The bound attribute or <code>null</code> if the parameter is bound to text
+	 */
+	BenderXmlAttribute getAttribute() {
+		return attribute;
+	}
+
+	/**
+	 * @return The bound text or <code>null</code> if the parameter is bound to an attribute
+	 */
+	BenderXmlDeferred.Text getText() {
+		return text;
+	}
+
+	/**
+	 * @return The converter of the parameter type
+	 */
+	BenderXmlConverter<?> getConverter() {
+		return converter;
+	}
+
+	/**
+	 * @return The registry the converter was resolved from
+	 */
+	BenderXmlConverters getConverters() {
+		return converters;
+	}
+
+	/**
+	 * Converts a value to the parameter type
+	 *
+	 * @param value The value or <code>null</code>
+	 * @return The converted value
+	 */
+	Object convert(CharSequence value) {
+		return converter.convert(value);
+	}
+
+	/**
+	 * Converts a value and sets it in a batch column. Built-in <code>int</code>, <code>long</code> 
+	 * and <code>double</code> conversions are not boxed, and text buffers are copied to strings.
+	 *
+	 * @param batch The batch of the binding
+	 * @param param The index of the parameter
+	 * @param value The value or <code>null</code>
+	 */
+	void set(MethodBatch<?> batch, int param, CharSequence value) {
+		if (primitive == int.class) {
+			batch.set(param, BenderXmlConverters.toInt(value));
+		} else if (primitive == long.class) {
+			batch.set(param, BenderXmlConverters.toLong(value));
+		} else if (primitive == double.class) {
+			batch.set(param, BenderXmlConverters.toDouble(value));
+		} else {
+			Object converted = converter.convert(value);
+			// Text buffers are reused by the next elements, so the batch keeps a copy
+			batch.set(param, converted instanceof BenderXmlText ? converted.toString() : converted);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return attribute != null ? attribute.toString() : text.toString();
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+
+import org.ctro.bender.xml.BenderXmlSource.Profile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>Caches the parser factories of each {@link Profile} and namespace setting, and the SAX parsers
+ * created by them.
+ * <p>Looking up and configuring a factory and creating a parser can cost more than parsing a small
+ * document, so factories are created once and parsers are reused by each thread: a parser is taken
+ * from its thread slot while it parses, so nested traversals get their own parser, and is reset and
+ * returned when the traversal ends. Configured factories are read without locking, the lock is only taken
+ * to create them.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlParsers {
+
+	private static final int CONFIGURATIONS = Profile.values().length * 2;
+
+	private static final AtomicReferenceArray<SAXParserFactory> SAX_FACTORIES = new AtomicReferenceArray<>(CONFIGURATIONS);
+
+	private static final AtomicReferenceArray<XMLInputFactory> STAX_FACTORIES = new AtomicReferenceArray<>(CONFIGURATIONS);
+
+	/**
+	 * Idle parsers of the current thread by configuration
+	 */
+	private static final ThreadLocal<SAXParser[]> PARSERS = ThreadLocal.withInitial(() -> new SAXParser[CONFIGURATIONS]);
+
+	private BenderXmlParsers() {
+	}
+
+	/**
+	 * Takes an idle parser of the current thread or creates a new one
+	 *
+	 * @param profile The parser profile
+	 * @param namespaceAware <code>true</code> for a namespace aware parser
+	 * @return The parser, to be given back with {@link #release(SAXParser, Profile, boolean)}
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	static SAXParser acquire(Profile profile, boolean namespaceAware) throws ParserConfigurationException, SAXException {
+		int i = index(profile, namespaceAware);
+		SAXParser[] parsers = PARSERS.get();
+		SAXParser parser = parsers[i];
+		if (parser != null) {
+			parsers[i] = null;
+			return parser;
+		}
+		SAXParserFactory factory = saxFactory(i, profile, namespaceAware);
+		// Factories are not required to be thread-safe
+		synchronized (factory) {
+			return factory.newSAXParser();
+		}
+	}
+
+	/**
+	 * Resets a parser and keeps it for the next traversal of the current thread
+	 *
+	 * @param parser The parser returned by {@link #acquire(Profile, boolean)}
+	 * @param profile The parser profile
+	 * @param namespaceAware The namespace setting of the parser
+	 */
+	static void release(SAXParser parser, Profile profile, boolean namespaceAware) {
+		try {
+			parser.reset();
+		} catch (UnsupportedOperationException e) {
+			// Parsers that cannot be reset are not reused
+			return;
+		}
+		SAXParser[] parsers = PARSERS.get();
+		int i = index(profile, namespaceAware);
+		if (parsers[i] == null) {
+			parsers[i] = parser;
+		}
+	}
+
+	/**
+	 * Gets the StAX factory of a configuration. Factories are thread-safe once configured.
+	 *
+	 * @param profile The parser profile
+	 * @param namespaceAware <code>true</code> for namespace aware readers
+	 * @return The factory
+	 */
+	static XMLInputFactory staxFactory(Profile profile, boolean namespaceAware) {
+		int i = index(profile, namespaceAware);
+		XMLInputFactory factory = STAX_FACTORIES.get(i);
+		if (factory != null) {
+			return factory;
+		}
+		synchronized (STAX_FACTORIES) {
+			factory = STAX_FACTORIES.get(i);
+			if (factory == null) {
+				factory = XMLInputFactory.newInstance();
+				factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, namespaceAware);
+				if (profile == Profile.HARDENED) {
+					factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+					factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+					factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+					factory.setXMLResolver((publicId, systemId, baseURI, namespace) -> new ByteArrayInputStream(new byte[0]));
+				}
+				// Published once configured
+				STAX_FACTORIES.set(i, factory);
+			}
+		}
+		return factory;
+	}
+
+	/**
+	 * Resolves every external entity to empty content, so parsers ignoring the disabled features do not
+	 * read them either
+	 *
+	 * @return An empty input source
+	 */
+	static InputSource emptySource() {
+		return new InputSource(new StringReader(""));
+	}
+
+	private static SAXParserFactory saxFactory(int i, Profile profile, boolean namespaceAware)
+			throws ParserConfigurationException, SAXException {
+		SAXParserFactory factory = SAX_FACTORIES.get(i);
+		if (factory != null) {
+			return factory;
+		}
+		synchronized (SAX_FACTORIES) {
+			factory = SAX_FACTORIES.get(i);
+			if (factory == null) {
+				factory = SAXParserFactory.newInstance();
+				factory.setNamespaceAware(namespaceAware);
+				if (profile == Profile.HARDENED) {
+					factory.setValidating(false);
+					factory.setXIncludeAware(false);
+					factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+					factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+					factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+					setFeature(factory, "http://apache.org/xml/features/disallow-doctype-decl", true);
+					setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+				}
+				// Published once configured
+				SAX_FACTORIES.set(i, factory);
+			}
+			return factory;
+		}
+	}
+
+	/**
+	 * Sets a feature specific to some parser implementations
+	 */
+	private static void setFeature(SAXParserFactory factory, String name, boolean value) throws ParserConfigurationException {
+		try {
+			factory.setFeature(name, value);
+		} catch (SAXException e) {
+			// Not supported by this implementation
+		}
+	}
+
+	private static int index(Profile profile, boolean namespaceAware) {
+		return profile.ordinal() * 2 + (namespaceAware ? 1 : 0);
+	}
+}
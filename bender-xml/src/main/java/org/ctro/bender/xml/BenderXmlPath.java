@@ -0,0 +1,330 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderPredicate;
+import org.ctro.bender.BenderPredicate.Operand;
+import org.ctro.bender.MethodBinding;
+import org.ctro.bender.MethodBinding.ParamBinding;
+import org.xml.sax.Attributes;
+
+/**
+ * <p>Node of the element path tree compiled from the {@link BenderXml} binding keys.
+ * <p>Each node matches one element name below its parent, so matching an element only needs one
+ * lookup from the node of its parent element. Element names are interned like the ones reported
+ * by the parser.
+ * <p>Steps can filter the matched elements with a {@link BenderPredicate} on their attributes, like
+ * <code>/feed/item[@type='trade']</code>, where references are attribute names preceded by <code>@</code>.
+ * Filtered steps are tested before the unfiltered step with the same name, and the element is matched by
+ * the first one that accepts it. Visitor classes do not define the order of their methods, so filtered steps
+ * are sorted by their text and steps with overlapping predicates always match the same way. The bindings 
+ * below the unfiltered step are merged into the filtered nodes, so they still match the descendants of 
+ * filtered elements, and so is its own binding when the filtered step has none.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlPath {
+
+	private static final BenderXmlPath[] NO_FILTERS = new BenderXmlPath[0];
+
+	/**
+	 * Child nodes by step
+	 */
+	private final Map<String, BenderXmlPath> children = new HashMap<>();
+
+	/**
+	 * Filtered child nodes by element name, or <code>null</code> if there are none
+	 */
+	private Map<String, BenderXmlPath[]> filtered;
+
+	private final String step;
+
+	/**
+	 * Element name matched by the step
+	 */
+	private final String name;
+
+	private final BenderPredicate filter;
+
+	private MethodBinding<BenderXml> binding;
+
+	private MethodHandle invoker;
+
+	private BenderXmlDeferred deferred;
+
+	/**
+	 * Registry of the parameter converters, set in the root node
+	 */
+	private BenderXmlConverters converters;
+
+	private BenderXmlPath(String step, String name, BenderPredicate filter) {
+		this.step = step;
+		this.name = name;
+		this.filter = filter;
+	}
+
+	/**
+	 * Compiles the given bindings into a path tree
+	 *
+	 * @param bindings The bindings with absolute path keys
+	 * @return The root node
+	 * @throws BenderException
+	 */
+	static BenderXmlPath compile(Collection<MethodBinding<BenderXml>> bindings) throws BenderException {
+		BenderXmlPath root = new BenderXmlPath(null, null, null);
+		for (MethodBinding<BenderXml> binding : bindings) {
+			BenderXmlPath node = root;
+			for (String step : steps(binding.getKey())) {
+				BenderXmlPath child = node.children.get(step);
+				if (child == null) {
+					child = node.add(step);
+				}
+				node = child;
+			}
+			for (ParamBinding<BenderXml> param : binding.getParamBindings()) {
+				BenderXmlConverters c = ((BenderXmlParam) param.getPath()).getConverters();
+				if (root.converters == null) {
+					root.converters = c;
+				} else if (root.converters != c) {
+					throw new BenderException("Visitor method " + binding.getMethod().getName() 
+							+ " registered with other converters in this session");
+				}
+			}
+			node.binding = binding;
+			node.deferred = BenderXmlDeferred.create(binding);
+			node.invoker = node.deferred == null ? BenderXmlInvoker.create(binding) : null;
+		}
+		root.merge();
+		return root;
+	}
+
+	private BenderXmlPath add(String step) throws BenderException {
+		int bracket = step.indexOf('[');
+		if (bracket < 0) {
+			String name = step.intern();
+			BenderXmlPath child = new BenderXmlPath(name, name, null);
+			children.put(child.step, child);
+			return child;
+		} else if (bracket == 0 || !step.endsWith("]")) {
+			throw new BenderException("Invalid step " + step);
+		}
+		String name = step.substring(0, bracket).trim().intern();
+		BenderPredicate filter = BenderPredicate.compile(step.substring(bracket + 1, step.length() - 1), 
+				BenderXmlPath::attribute);
+		BenderXmlPath child = new BenderXmlPath(step, name, filter);
+		put(child);
+		return child;
+	}
+
+	/**
+	 * Adds a child node, keeping the filtered steps of each name sorted
+	 */
+	private void put(BenderXmlPath child) {
+		children.put(child.step, child);
+		if (child.filter == null) {
+			return;
+		}
+		if (filtered == null) {
+			filtered = new HashMap<>();
+		}
+		BenderXmlPath[] f = filtered.getOrDefault(child.name, NO_FILTERS);
+		int i = 0;
+		while (i < f.length && f[i].step.compareTo(child.step) < 0) {
+			i++;
+		}
+		BenderXmlPath[] sorted = new BenderXmlPath[f.length + 1];
+		System.arraycopy(f, 0, sorted, 0, i);
+		sorted[i] = child;
+		System.arraycopy(f, i, sorted, i + 1, f.length - i);
+		filtered.put(child.name, sorted);
+	}
+
+	/**
+	 * Merges the unfiltered children into the filtered children with the same name, in the whole subtree
+	 */
+	private void merge() {
+		for (BenderXmlPath child : new ArrayList<>(children.values())) {
+			child.merge();
+		}
+		mergeFiltered();
+	}
+
+	/**
+	 * Merges the unfiltered children into the filtered children with the same name
+	 */
+	private void mergeFiltered() {
+		if (filtered == null) {
+			return;
+		}
+		for (Map.Entry<String, BenderXmlPath[]> e : filtered.entrySet()) {
+			BenderXmlPath unfiltered = children.get(e.getKey());
+			if (unfiltered != null) {
+				BenderXmlPath[] f = e.getValue();
+				for (int i = 0; i < f.length; i++) {
+					f[i] = union(f[i], unfiltered);
+					children.put(f[i].step, f[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a node matching the step of the first node with the bindings of both subtrees. The binding of 
+	 * the first node takes precedence over the binding of the second one. Nodes of only one subtree are 
+	 * shared, as the tree is not modified once merged.
+	 */
+	private static BenderXmlPath union(BenderXmlPath first, BenderXmlPath second) {
+		if (first == second) {
+			return first;
+		}
+		BenderXmlPath node = new BenderXmlPath(first.step, first.name, first.filter);
+		BenderXmlPath bound = first.binding != null ? first : second;
+		node.binding = bound.binding;
+		node.invoker = bound.invoker;
+		node.deferred = bound.deferred;
+		for (BenderXmlPath child : first.children.values()) {
+			BenderXmlPath other = second.children.get(child.step);
+			node.put(other == null ? child : union(child, other));
+		}
+		for (BenderXmlPath child : second.children.values()) {
+			if (!first.children.containsKey(child.step)) {
+				node.put(child);
+			}
+		}
+		node.mergeFiltered();
+		return node;
+	}
+
+	private static Operand attribute(String reference) throws BenderException {
+		if (!reference.startsWith("@") || reference.length() == 1) {
+			throw new BenderException("Attribute reference expected instead of " + reference);
+		}
+		BenderXmlAttribute attribute = BenderXmlAttribute.compile(reference.substring(1));
+		return attributes -> attribute.getValue((Attributes) attributes);
+	}
+
+	/**
+	 * Splits a key into its steps. Slashes inside predicates do not split steps.
+	 */
+	private static List<String> steps(String key) throws BenderException {
+		List<String> steps = new ArrayList<>();
+		int brackets = 0;
+		char quote = 0;
+		int start = 0;
+		for (int i = 0; i <= key.length(); i++) {
+			char c = i < key.length() ? key.charAt(i) : '/';
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '[') {
+				brackets++;
+			} else if (c == ']') {
+				brackets--;
+			} else if (c == '/' && brackets == 0) {
+				String step = key.substring(start, i).trim();
+				if (!step.isEmpty()) {
+					steps.add(step);
+				}
+				start = i + 1;
+			}
+		}
+		if (quote != 0 || brackets != 0) {
+			throw new BenderException("Unbalanced predicate in key " + key);
+		}
+		return steps;
+	}
+
+	/**
+	 * Gets the node matching a child element
+	 *
+	 * @param name The element name
+	 * @param attributes The element attributes, tested by filtered steps
+	 * @return The child node or <code>null</code> if no binding matches the element or its descendants
+	 * @throws BenderException If a filter cannot be tested
+	 */
+	BenderXmlPath child(String name, Attributes attributes) throws BenderException {
+		if (filtered != null) {
+			BenderXmlPath[] f = filtered.get(name);
+			if (f != null) {
+				for (BenderXmlPath node : f) {
+					if (node.filter.test(attributes)) {
+						return node;
+					}
+				}
+			}
+		}
+		return children.get(name);
+	}
+
+	/**
+	 * Gets a child node by its step
+	 *
+	 * @param step The step returned by {@link #getStep()}
+	 * @return The child node or <code>null</code>
+	 */
+	BenderXmlPath step(String step) {
+		return children.get(step);
+	}
+
+	/**
+	 * @return The key step matched by this node: the element name followed by its predicate, if any
+	 */
+	String getStep() {
+		return step;
+	}
+
+	/**
+	 * @return The binding of this node or <code>null</code>
+	 */
+	MethodBinding<BenderXml> getBinding() {
+		return binding;
+	}
+
+	/**
+	 * @return The invoker created by {@link BenderXmlInvoker} for the binding of this node or <code>null</code>
+	 */
+	MethodHandle getInvoker() {
+		return invoker;
+	}
+
+	/**
+	 * @return The deferred binding of this node or <code>null</code> if the binding has no text parameters
+	 */
+	BenderXmlDeferred getDeferred() {
+		return deferred;
+	}
+
+	/**
+	 * @return The registry of the parameter converters of the tree, or <code>null</code> if no method has 
+	 * parameters
+	 */
+	BenderXmlConverters getConverters() {
+		return converters;
+	}
+}
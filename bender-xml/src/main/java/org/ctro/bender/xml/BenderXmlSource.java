@@ -16,20 +16,30 @@
  */
 package org.ctro.bender.xml;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.Collection;
 
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import org.ctro.bender.BenderControl;
 import org.ctro.bender.BenderException;
 import org.ctro.bender.BenderSession;
 import org.ctro.bender.BenderSource;
 import org.ctro.bender.BenderVisitor;
+import org.ctro.bender.MethodBatch;
 import org.ctro.bender.MethodBinding;
+import org.ctro.bender.MethodBinding.ParamBinding;
 import org.ctro.bender.beans.BenderBeanSource;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -44,6 +54,36 @@ import org.xml.sax.helpers.DefaultHandler;
  *BenderXmlSource source = new BenderXmlSource(session, xml);
  *source.accept(visitor);}</pre>
  * 
+ * <p>Visitor methods can return a {@link BenderControl} to skip the content of the matched element or to 
+ * stop parsing the stream. Elements without bindings in their subtree are skipped without matching
+ * their content.
+ * 
+ * <p>Parameters are bound to attributes by name, to the text of the element with <code>text()</code> or 
+ * to the text of a child element with <code>child/text()</code>. Methods with text parameters are 
+ * invoked when their element ends. Text is collected in reusable buffers and can be received as a 
+ * <code>CharSequence</code>, valid only during the call, or parsed to primitives without allocating:
+ * 
+ * <pre>{@code
+ * 	@BenderXml("/people/person")
+ *public void visitPerson(@BenderXml("id") int id, @BenderXml("name/text()") CharSequence name, 
+ *        @BenderXml("age/text()") int age)}</pre>
+ * 
+ * <p>Values are converted to the parameter types by the built-in converters of {@link BenderXmlConverters}. 
+ * Converters of other types are registered in a registry set with {@link #setConverters(BenderXmlConverters)}.
+ * 
+ * <p>Parsers are cached and reused by each thread. The {@link Profile#HARDENED} profile configures them 
+ * for untrusted documents, without reading external DTDs or entities.
+ * 
+ * <p>Streams are parsed with SAX by default. The {@link Engine#STAX} engine pulls the events from an 
+ * {@link XMLStreamReader} instead: skipped subtrees are read without reporting their names, attributes 
+ * or text, and the caller can drive the traversal one bound element at a time:
+ * 
+ * <pre>{@code
+ * 	source.open(visitor);
+ *while (source.next()) {
+ *    // Do something between visits...
+ *}}</pre>
+ * 
  * @author Jordi Carretero
  *
  * @see BenderXml
@@ -52,12 +92,105 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public class BenderXmlSource extends BenderSource<BenderXml> {
 	
-	private Stack<Element> path = new Stack<Element>();
+	/**
+	 * Parsing engines
+	 */
+	public enum Engine {
+		
+		/**
+		 * {@link SAXParser} pushing all the document events
+		 */
+		SAX,
+		
+		/**
+		 * {@link XMLStreamReader} pulling the events of bound elements
+		 */
+		STAX
+	}
+	
+	/**
+	 * Parser configurations
+	 */
+	public enum Profile {
+		
+		/**
+		 * Default configuration of the parser implementation
+		 */
+		DEFAULT,
+		
+		/**
+		 * Parser for untrusted documents: SAX rejects documents with a DTD, or limits entity expansion with 
+		 * secure processing if the parser cannot reject them, StAX ignores DTDs, external DTDs and entities 
+		 * are never read, and validation and XInclude are off
+		 */
+		HARDENED
+	}
+	
+	private static final int INITIAL_DEPTH = 16;
+	
+	/*
+	 * Element stack: matched steps, path nodes and current visitors by depth. Index 0 is the document.
+	 */
+	private String[] names = new String[INITIAL_DEPTH];
+	
+	private BenderXmlPath[] nodes = new BenderXmlPath[INITIAL_DEPTH];
+	
+	private BenderVisitor[] visitors = new BenderVisitor[INITIAL_DEPTH];
+	
+	/**
+	 * Values of the deferred bindings of the open elements, reused by depth
+	 */
+	private BenderXmlDeferred.State[] states = new BenderXmlDeferred.State[INITIAL_DEPTH];
+	
+	private int depth;
+	
+	/**
+	 * Number of open elements being skipped, not pushed to the element stack
+	 */
+	private int skipped;
+	
+	/**
+	 * If the content of the top element must be skipped
+	 */
+	private boolean skipContent;
+	
+	/**
+	 * Buffer of the text of a child element bound to a deferred binding of its parent
+	 */
+	private BenderXmlText childText;
+	
+	/**
+	 * Nesting level of the child element of {@link #childText}, including skipped elements
+	 */
+	private int childLevel;
+	
+	/**
+	 * If the last end tag invoked a deferred binding
+	 */
+	private boolean deferredVisit;
 	
 	private InputStream stream;
 	
 	private Locator loc;
 	
+	private Engine engine = Engine.SAX;
+	
+	private Profile profile = Profile.DEFAULT;
+	
+	private BenderXmlConverters converters = BenderXmlConverters.DEFAULT;
+	
+	/**
+	 * Namespace setting or <code>null</code> for the default of the engine
+	 */
+	private Boolean namespaceAware;
+	
+	/**
+	 * Reader of an open StAX traversal
+	 */
+	private XMLStreamReader reader;
+	
+	private BenderStaxAttributes attributes;
+	
 	// TODO strict validation
 	// private boolean strict = false;
 		
@@ -82,6 +215,48 @@ public class BenderXmlSource extends BenderSource<BenderXml> {
 //		this.strict = strict;
 //	}
 
+	/**
+	 * Selects the parsing engine, {@link Engine#SAX} by default
+	 * 
+	 * @param engine The engine
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * Selects the parser configuration, {@link Profile#DEFAULT} by default
+	 * 
+	 * @param profile The profile
+	 */
+	public void setProfile(Profile profile) {
+		this.profile = profile;
+	}
+	
+	/**
+	 * Sets the converters of the visitor method parameters, the built-in ones by default. Converters are 
+	 * resolved when a visitor is registered and the bindings are shared by all the sources of the session, 
+	 * so sources sharing a session must use the same converters.
+	 * 
+	 * @param converters The converters registry
+	 */
+	public void setConverters(BenderXmlConverters converters) {
+		if (converters == null) {
+			throw new IllegalArgumentException("Converters cannot be null");
+		}
+		this.converters = converters;
+	}
+	
+	/**
+	 * Enables or disables namespace processing. By default SAX parsers are not namespace aware and StAX 
+	 * readers are. Attributes bound with the <code>{uri}name</code> notation require namespace processing.
+	 * 
+	 * @param namespaceAware <code>true</code> to process namespaces
+	 */
+	public void setNamespaceAware(boolean namespaceAware) {
+		this.namespaceAware = namespaceAware;
+	}
+	
 	@Override
 	protected Class<BenderXml> getAnnotationClass() {
 		return BenderXml.class;
@@ -97,20 +272,204 @@ public class BenderXmlSource extends BenderSource<BenderXml> {
 		return value;
 	}
 	
+	@Override
+	protected Object compileParamPath(BenderXml annotation, Class<?> type) throws BenderException {
+		return BenderXmlParam.compile(annotation.value(), type, converters);
+	}
+	
+	@Override
+	protected Object compileBindings(Collection<MethodBinding<BenderXml>> bindings) throws BenderException {
+		return BenderXmlPath.compile(bindings);
+	}
+	
 	@Override
 	protected void accept0(BenderVisitor visitor) throws BenderException {
-		path.push(new Element(visitor));
+		reset(visitor);
+		if (engine == Engine.STAX) {
+			openReader();
+			pull(false);
+			return;
+		}
+		boolean ns = namespaceAware != null && namespaceAware;
+		SAXParser sax = null;
 		try {
-			SAXParser sax = SAXParserFactory.newInstance().newSAXParser();
+			sax = BenderXmlParsers.acquire(profile, ns);
 			sax.parse(stream, new SAXHandle());
+		} catch (TerminateException e) {
+			// Traversal stopped by the visitor
+		} catch (BenderSAXException e) {
+			throw new BenderException(e.getMessage(), e.getException());
+		} catch (Exception e) {
+			throw new BenderException("Error parsing input source", e);
+		} finally {
+			if (sax != null) {
+				BenderXmlParsers.release(sax, profile, ns);
+			}
+		}
+	}
+	
+	/**
+	 * Starts a traversal driven by the caller with the {@link Engine#STAX} engine, whatever the selected 
+	 * engine is. The stream is parsed by the following calls to {@link #next()}.
+	 * 
+	 * @param visitor The {@link BenderVisitor}
+	 * @throws BenderException
+	 */
+	public void open(BenderVisitor visitor) throws BenderException {
+		close();
+		prepare(visitor);
+		reset(visitor);
+		openReader();
+	}
+	
+	/**
+	 * Parses the stream of a traversal started with {@link #open(BenderVisitor)} until the next bound 
+	 * element has been visited.
+	 * 
+	 * @return <code>false</code> if the traversal has ended and the visitor has been ended
+	 * @throws BenderException
+	 */
+	public boolean next() throws BenderException {
+		return reader != null && pull(true);
+	}
+	
+	/**
+	 * Stops a traversal started with {@link #open(BenderVisitor)} without ending its visitors. The stream 
+	 * is not closed.
+	 */
+	public void close() {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				// Nothing to release
+			}
+			reader = null;
+			attributes = null;
+			loc = null;
+		}
+	}
+	
+	private void reset(BenderVisitor visitor) throws BenderException {
+		depth = 0;
+		skipped = 0;
+		skipContent = false;
+		childText = null;
+		deferredVisit = false;
+		for (BenderXmlDeferred.State state : states) {
+			if (state != null) {
+				state.clear();
+			}
+		}
+		BenderXmlPath root = (BenderXmlPath) getCompiledBindings();
+		if (root.getConverters() != null && root.getConverters() != converters) {
+			throw new BenderException("Visitor " + visitor.getClass().getName() 
+					+ " registered with other converters in this session");
+		}
+		nodes[0] = root;
+		visitors[0] = visitor;
+	}
+	
+	private void openReader() throws BenderException {
+		try {
+			reader = BenderXmlParsers.staxFactory(profile, namespaceAware == null || namespaceAware)
+					.createXMLStreamReader(stream);
+		} catch (XMLStreamException e) {
+			throw new BenderException("Error parsing input source", e);
+		}
+		attributes = new BenderStaxAttributes(reader);
+		loc = attributes;
+	}
+	
+	/**
+	 * Pulls events from the StAX reader
+	 * 
+	 * @param once <code>true</code> to return after the first visitor method call
+	 * @return <code>false</code> if the document has been parsed
+	 */
+	private boolean pull(boolean once) throws BenderException {
+		XMLStreamReader r = reader;
+		try {
+			while (r.hasNext()) {
+				switch (r.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String name = attributes.getElementName();
+					BenderXmlText text = child(name);
+					BenderXmlPath node = start(name, attributes);
+					if (node == null) {
+						// No bindings in this subtree
+						skip(r, text);
+					} else if (skipContent) {
+						skip(r, null);
+						end();
+					} else if (text != null) {
+						childText = text;
+						childLevel = depth;
+					}
+					if (once && node != null && node.getBinding() != null && node.getDeferred() == null) {
+						return true;
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					endChild();
+					end();
+					if (once && deferredVisit) {
+						deferredVisit = false;
+						return true;
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					text(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+					break;
+				case XMLStreamConstants.END_DOCUMENT:
+					endDocument();
+					break;
+				default:
+					// Comments and processing instructions are not bound
+				}
+			}
+		} catch (TerminateException e) {
+			// Traversal stopped by the visitor
 		} catch (BenderSAXException e) {
+			close();
 			throw new BenderException(e.getMessage(), e.getException());
 		} catch (Exception e) {
+			close();
 			throw new BenderException("Error parsing input source", e);
 		}
+		close();
+		return false;
+	}
+	
+	/**
+	 * Pulls the events of the current element up to its end tag without reading them
+	 * 
+	 * @param text The buffer of the element text or <code>null</code>
+	 */
+	private static void skip(XMLStreamReader r, BenderXmlText text) throws XMLStreamException {
+		for (int open = 1; open > 0;) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				open++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				open--;
+			} else if (text != null && open == 1 && (event == XMLStreamConstants.CHARACTERS 
+					|| event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)) {
+				text.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+			}
+		}
 	}
 
 	private class SAXHandle extends DefaultHandler {
+		
+		/* (non-Javadoc)
+		 * @see org.xml.sax.helpers.DefaultHandler#resolveEntity(java.lang.String, java.lang.String)
+		 */
+		public InputSource resolveEntity(String publicId, String systemId) throws IOException, SAXException {
+			return profile == Profile.HARDENED ? BenderXmlParsers.emptySource() : null;
+		}
 				
 		/* (non-Javadoc)
 		 * @see org.xml.sax.helpers.DefaultHandler#setDocumentLocator(org.xml.sax.Locator)
@@ -123,121 +482,318 @@ public class BenderXmlSource extends BenderSource<BenderXml> {
 		 * @see org.xml.sax.helpers.DefaultHandler#endDocument()
 		 */
 		public void endDocument() throws SAXException {
-			path.peek().visitor.visitEnd();
+			BenderXmlSource.this.endDocument();
 		}
 
 		/* (non-Javadoc)
 		 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
 		 */
 		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-			Element el = path.peek();
-			el.name = qName;
-			MethodBinding<BenderXml> binding = getBinding(getAbsolutePath());
-			if (binding != null) {
-				Object v = invoke(binding, attributes);
-				if (v != null && v instanceof BenderVisitor) {
-					if (v.getClass().isAnonymousClass()) {
-						try {
-							@SuppressWarnings("unchecked")
-							Class<? extends BenderVisitor> c = (Class<? extends BenderVisitor>) v.getClass();
-							registerAnonymousClass(c);
-						} catch (BenderException e) {
-							throw new BenderSAXException(e);
-						}
-					}
-					path.push(new Element((BenderVisitor) v));
-					return;
-				}
+			if (skipped > 0 || skipContent) {
+				skipped++;
+				return;
+			}
+			BenderXmlText text = child(qName);
+			if (start(qName, attributes) == null) {
+				// No bindings in this subtree
+				skipped++;
+			}
+			if (text != null) {
+				childText = text;
+				childLevel = depth + skipped;
 			}
-			path.push(new Element(el.visitor));
 		}
 
 		/* (non-Javadoc)
 		 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
 		 */
 		public void endElement(String uri, String localName, String qName) throws SAXException {
-			BenderVisitor v = path.pop().visitor;
-			if (v != path.peek().visitor) {
-				v.visitEnd();
+			endChild();
+			if (skipped > 0) {
+				skipped--;
+				return;
 			}
+			end();
+		}
+
+		/* (non-Javadoc)
+		 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+		 */
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			text(ch, start, length);
+		}
+
+		/* (non-Javadoc)
+		 * @see org.xml.sax.helpers.DefaultHandler#ignorableWhitespace(char[], int, int)
+		 */
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			text(ch, start, length);
 		}
 	}
 	
-	private Object invoke(MethodBinding<BenderXml> binding, Attributes attrs) throws BenderSAXException {
-		Method method = binding.getMethod();
-		Class<?>[] types = method.getParameterTypes();
-		Object[] params = new Object[types.length];
-		for (int i = 0; i < types.length; i++) {
+	/**
+	 * Gets the buffer for the text of a child element bound by a deferred binding of the top element
+	 * 
+	 * @param qName The child element name
+	 * @return The buffer or <code>null</code> if the text of the child is not bound
+	 */
+	private BenderXmlText child(String qName) {
+		BenderXmlDeferred.State state = states[depth];
+		return state == null ? null : state.child(qName);
+	}
+	
+	/**
+	 * Stops collecting the text of a child element when it ends
+	 */
+	private void endChild() {
+		if (childText != null && depth + skipped == childLevel) {
+			childText = null;
+		}
+	}
+	
+	/**
+	 * Collects the text of the current element
+	 */
+	private void text(char[] ch, int start, int length) {
+		if (childText != null && depth + skipped == childLevel) {
+			childText.append(ch, start, length);
+		}
+		if (skipped == 0) {
+			BenderXmlDeferred.State state = states[depth];
+			if (state != null && state.getText() != null) {
+				state.getText().append(ch, start, length);
+			}
+		}
+	}
+	
+	/**
+	 * Matches a started element and invokes its binding
+	 * 
+	 * @return The matched node or <code>null</code> if no binding matches the element or its descendants
+	 */
+	private BenderXmlPath start(String qName, Attributes attributes) throws SAXException {
+		BenderXmlPath node;
+		try {
+			node = nodes[depth].child(qName, attributes);
+		} catch (BenderException e) {
+			throw new BenderSAXException(e);
+		}
+		if (node == null) {
+			return null;
+		}
+		BenderVisitor visitor = visitors[depth];
+		push(node.getStep(), node, visitor);
+		MethodBinding<BenderXml> binding = node.getBinding();
+		if (binding != null && node.getDeferred() != null) {
+			// Invoked when the element ends
+			BenderXmlDeferred.State state = states[depth];
+			if (state == null) {
+				states[depth] = state = new BenderXmlDeferred.State();
+			}
+			state.start(node.getDeferred(), visitor, attributes);
+		} else if (binding != null) {
+			Object v = invoke(node, visitor, attributes);
+			if (v == BenderControl.SKIP) {
+				skipContent = true;
+			} else if (v == BenderControl.TERMINATE) {
+				terminate();
+			} else if (v != null && v instanceof BenderVisitor) {
+				if (v.getClass().isAnonymousClass()) {
+					try {
+						@SuppressWarnings("unchecked")
+						Class<? extends BenderVisitor> c = (Class<? extends BenderVisitor>) v.getClass();
+						registerAnonymousClass(c);
+						if (getCompiledBindings() != nodes[0]) {
+							// New bindings registered
+							rematch();
+						}
+					} catch (BenderException e) {
+						throw new BenderSAXException(e);
+					}
+				}
+				visitor = (BenderVisitor) v;
+			}
+			visitors[depth] = visitor;
+		}
+		return node;
+	}
+	
+	/**
+	 * Ends the top element of the stack
+	 */
+	private void end() throws SAXException {
+		skipContent = false;
+		BenderXmlDeferred.State state = states[depth];
+		if (state != null && state.isOpen()) {
+			invokeDeferred(state);
+		}
+		BenderVisitor v = visitors[depth];
+		names[depth] = null;
+		nodes[depth] = null;
+		visitors[depth] = null;
+		depth--;
+		if (v != visitors[depth]) {
 			try {
-				params[i] = convert(attrs.getValue(i), types[i]);
-			} catch (IllegalArgumentException e) {
-				throw new BenderSAXException("Error invoking " + method.getName(), e, loc);
+				visitEnd(v);
+			} catch (BenderException e) {
+				throw new BenderSAXException(e);
 			}
 		}
+	}
+	
+	private void endDocument() throws SAXException {
+		try {
+			visitEnd(visitors[0]);
+		} catch (BenderException e) {
+			throw new BenderSAXException(e);
+		}
+	}
+	
+	/**
+	 * Ends all open visitors and stops parsing
+	 */
+	private void terminate() throws SAXException {
 		try {
-			return method.invoke(path.peek().visitor, params);
+			for (int i = depth; i > 0; i--) {
+				if (visitors[i] != visitors[i - 1]) {
+					visitEnd(visitors[i]);
+				}
+			}
+			visitEnd(visitors[0]);
+		} catch (BenderException e) {
+			throw new BenderSAXException(e);
+		}
+		throw new TerminateException();
+	}
+	
+	private void push(String name, BenderXmlPath node, BenderVisitor visitor) {
+		if (++depth == names.length) {
+			names = Arrays.copyOf(names, depth * 2);
+			nodes = Arrays.copyOf(nodes, depth * 2);
+			visitors = Arrays.copyOf(visitors, depth * 2);
+			states = Arrays.copyOf(states, depth * 2);
+		}
+		names[depth] = name;
+		nodes[depth] = node;
+		visitors[depth] = visitor;
+	}
+	
+	/**
+	 * Matches the current element stack against the compiled bindings again
+	 */
+	private void rematch() throws BenderException {
+		BenderXmlPath node = (BenderXmlPath) getCompiledBindings();
+		nodes[0] = node;
+		for (int i = 1; i <= depth; i++) {
+			// Pushed elements are still matched by the new bindings, which include the old ones
+			node = node.step(names[i]);
+			nodes[i] = node;
+		}
+	}
+	
+	private Object invoke(BenderXmlPath node, Object visitor, Attributes attrs) throws BenderSAXException {
+		MethodBinding<BenderXml> binding = node.getBinding();
+		Method method = binding.getMethod();
+		ParamBinding<BenderXml>[] paramBindings = binding.getParamBindings();
+		Object p0, p1, p2;
+		try {
+			if (binding.getBatchSize() > 0) {
+				MethodBatch<BenderXml> batch = getBatch(binding, visitor);
+				for (int i = 0; i < paramBindings.length; i++) {
+					BenderXmlParam param = (BenderXmlParam) paramBindings[i].getPath();
+					param.set(batch, i, param.getAttribute().getValue(attrs));
+				}
+				if (batch.next()) {
+					batch.flush();
+				}
+				return null;
+			}
+			MethodHandle invoker = node.getInvoker();
+			if (invoker != null) {
+				// Primitive parameters without boxing
+				return (Object) invoker.invokeExact(visitor, attrs);
+			}
+			switch (paramBindings.length) {
+			case 0:
+				return binding.invoke(visitor);
+			case 1:
+				p0 = convert(paramBindings[0], attrs);
+				return binding.invoke(visitor, p0);
+			case 2:
+				p0 = convert(paramBindings[0], attrs);
+				p1 = convert(paramBindings[1], attrs);
+				return binding.invoke(visitor, p0, p1);
+			case 3:
+				p0 = convert(paramBindings[0], attrs);
+				p1 = convert(paramBindings[1], attrs);
+				p2 = convert(paramBindings[2], attrs);
+				return binding.invoke(visitor, p0, p1, p2);
+			default:
+				Object[] params = new Object[paramBindings.length];
+				for (int i = 0; i < params.length; i++) {
+					params[i] = convert(paramBindings[i], attrs);
+				}
+				return binding.invoke(visitor, params);
+			}
 		} catch (Exception e) {
 			throw new BenderSAXException("Error invoking " + method.getName(), e, loc);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new BenderSAXException("Error invoking " + method.getName(), new InvocationTargetException(t), loc);
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <T> T convert(String value, Class<T> type) {
+	/**
+	 * Invokes the deferred binding of the top element
+	 */
+	private void invokeDeferred(BenderXmlDeferred.State state) throws SAXException {
+		Method method = state.getBinding().getMethod();
 		Object v;
-		if (boolean.class.equals(type) || Boolean.class.equals(type)) {
-			v = Boolean.parseBoolean(value);
-		} else if (type.isPrimitive() || type.isAssignableFrom(Number.class)) {
-			if (value == null) value = "0";
-			if (int.class.equals(type) || Integer.class.equals(type)) {
-				v = Integer.parseInt(value);
-			} else if (double.class.equals(type) || Double.class.equals(type)) {
-				v = Double.parseDouble(value);
-			} else if (long.class.equals(type) || Long.class.equals(type)) {
-				v = Long.parseLong(value);
-			} else if (byte.class.equals(type) || Byte.class.equals(type)) {
-				v = Byte.parseByte(value);
-			} else if (char.class.equals(type) || Character.class.equals(type)) {
-				v = value.charAt(0);
-			} else if (float.class.equals(type) || Float.class.equals(type)) {
-				v = Float.parseFloat(value);
-			} else if (short.class.equals(type) || Short.class.equals(type)) {
-				v = Short.parseShort(value);
-			} else {
-				throw new IllegalArgumentException("Cannot convert from '" + value + "' to type " + type);
-			}
-		} else {
-			// TODO date
-			v = value.toString();
-		}
-		return (T) v;
-	}
-		
-	private String getAbsolutePath() {
-		StringBuilder builder = new StringBuilder(path.size() * 16);
-		for (Element p : path) {
-			builder.append('/');
-			builder.append(p.name);
+		try {
+			v = state.invoke(this);
+		} catch (Exception e) {
+			throw new BenderSAXException("Error invoking " + method.getName(), e, loc);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new BenderSAXException("Error invoking " + method.getName(), new InvocationTargetException(t), loc);
+		} finally {
+			state.clear();
 		}
-		return builder.toString();
-	}
-
-	private static class Element {
-		
-		String name;
-		BenderVisitor visitor;
-		
-		Element(BenderVisitor v) {
-			this(null, v);
+		deferredVisit = true;
+		if (v == BenderControl.TERMINATE) {
+			terminate();
 		}
-		
-		Element(String name, BenderVisitor v) {
-			this.name = name;
-			this.visitor = v;
+	}
+	
+	/**
+	 * Adds the values of a deferred binding to its batch
+	 */
+	void batch(MethodBinding<BenderXml> binding, Object visitor, CharSequence[] values) throws BenderException {
+		ParamBinding<BenderXml>[] paramBindings = binding.getParamBindings();
+		MethodBatch<BenderXml> batch = getBatch(binding, visitor);
+		for (int i = 0; i < paramBindings.length; i++) {
+			((BenderXmlParam) paramBindings[i].getPath()).set(batch, i, values[i]);
 		}
-
-		@Override
-		public String toString() {
-			return "Element [name=" + name + ", visitor=" + visitor + "]";
+		if (batch.next()) {
+			batch.flush();
 		}
 	}
+	
+	/**
+	 * Reads and converts the attribute of a parameter
+	 */
+	private static Object convert(ParamBinding<BenderXml> paramBinding, Attributes attrs) {
+		BenderXmlParam param = (BenderXmlParam) paramBinding.getPath();
+		return param.convert(param.getAttribute().getValue(attrs));
+	}
+	
+	/**
+	 * Thrown to stop parsing when a visitor terminates the traversal
+	 */
+	private static final class TerminateException extends SAXException {
+		
+		private static final long serialVersionUID = 1L;
+	}
 }
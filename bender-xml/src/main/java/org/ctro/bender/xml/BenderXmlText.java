@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.xml;
+
+import java.util.Arrays;
+
+/**
+ * <p>Reusable buffer of the text of an element.
+ * <p>Characters reported by the parser are appended to the same array for every element, growing it
+ * when needed, so collecting text does not allocate once the buffer is large enough. The buffer is
+ * passed to <code>CharSequence</code> parameters as is, trimmed of leading and trailing whitespace,
+ * and is only valid during the visitor method call.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderXmlText implements CharSequence {
+
+	private char[] chars = new char[64];
+
+	private int length;
+
+	/**
+	 * Trimmed range
+	 */
+	private int begin, end;
+
+	/**
+	 * Appends characters
+	 *
+	 * @param ch The characters array
+	 * @param start The first character
+	 * @param count The number of characters
+	 */
+	void append(char[] ch, int start, int count) {
+		if (length + count > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
+		}
+		System.arraycopy(ch, start, chars, length, count);
+		length += count;
+	}
+
+	/**
+	 * Trims the collected text
+	 *
+	 * @return This buffer
+	 */
+	BenderXmlText trim() {
+		int b = 0;
+		int e = length;
+		while (b < e && Character.isWhitespace(chars[b])) {
+			b++;
+		}
+		while (e > b && Character.isWhitespace(chars[e - 1])) {
+			e--;
+		}
+		begin = b;
+		end = e;
+		return this;
+	}
+
+	/**
+	 * Removes the collected text
+	 */
+	void clear() {
+		length = 0;
+		begin = 0;
+		end = 0;
+	}
+
+	@Override
+	public int length() {
+		return end - begin;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - begin) {
+			throw new IndexOutOfBoundsException("Index " + index);
+		}
+		return chars[begin + index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, begin, end - begin);
+	}
+}
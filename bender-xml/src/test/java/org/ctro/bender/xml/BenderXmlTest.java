@@ -1,12 +1,24 @@
 package org.ctro.bender.xml;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.ctro.bender.BenderBatch;
+import org.ctro.bender.BenderControl;
+import org.ctro.bender.BenderException;
 import org.ctro.bender.BenderSession;
+import org.ctro.bender.BenderSource;
+import org.ctro.bender.BenderVisitor;
 
 /**
  * Unit test for BenderXml.
@@ -41,6 +53,566 @@ public class BenderXmlTest extends TestCase {
 		source.accept(new BenderXmlVisitor());
 	}
 	
+	public void testAcceptAll() throws Exception {
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		try (InputStream stream = Thread.currentThread().getContextClassLoader().getResourceAsStream("org/ctro/bender/xml/test.xml")) {
+			byte[] buffer = new byte[1024];
+			for (int n; (n = stream.read(buffer)) > 0;) {
+				xml.write(buffer, 0, n);
+			}
+		}
+		BenderSession session = new BenderSession();
+		List<BenderXmlSource> sources = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			sources.add(new BenderXmlSource(session, new ByteArrayInputStream(xml.toByteArray())));
+		}
+		final AtomicInteger count = new AtomicInteger();
+		BenderSource.acceptAll(sources, s -> new CountXmlVisitor(count), 8).get();
+		assertEquals(100, count.get());
+	}
+	
+	public void testControl() throws Exception {
+		String xml = "<feed><header id=\"1\"/><item><a/><b/></item><item/><item/></feed>";
+		ControlXmlVisitor visitor = new ControlXmlVisitor();
+		new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8"))).accept(visitor);
+		assertEquals("header item end", visitor.visits.toString().trim());
+	}
+	
+	public void testDeferredControl() throws Exception {
+		String xml = "<feed><item><name>a</name></item><item><name>b</name></item><item><name>c</name></item></feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			// Skipping has no effect at the end tag
+			DeferredControlXmlVisitor visitor = new DeferredControlXmlVisitor(BenderControl.SKIP);
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			assertEquals("a b c end", visitor.visits.toString());
+			visitor = new DeferredControlXmlVisitor(BenderControl.TERMINATE);
+			source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			assertEquals("a b end", visitor.visits.toString());
+		}
+	}
+	
+	public void testFilter() throws Exception {
+		String xml = "<feed><item type=\"trade\" qty=\"5\"/><item type=\"quote\"/>"
+				+ "<item type=\"trade\" qty=\"50\"/><item/></feed>";
+		FilterXmlVisitor visitor = new FilterXmlVisitor();
+		new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8"))).accept(visitor);
+		assertEquals("trade other large other", visitor.visits.toString().trim());
+		// Overlapping predicates match the same way whatever the method order
+		ReversedFilterXmlVisitor reversed = new ReversedFilterXmlVisitor();
+		new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8"))).accept(reversed);
+		assertEquals("trade other large other", reversed.visits.toString().trim());
+	}
+	
+	public void testFilterDescendants() throws Exception {
+		String xml = "<feed><item type=\"trade\"><price v=\"1\"/><qty v=\"5\"/></item>"
+				+ "<item><price v=\"2\"/><qty v=\"6\"/></item></feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			FilterDescendantsXmlVisitor visitor = new FilterDescendantsXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			// Bindings below the unfiltered step still match inside filtered elements
+			assertEquals("trade price:1 qty:5 price:2 qty:6", visitor.visits.toString().trim());
+		}
+	}
+	
+	public void testStax() throws Exception {
+		String xml = "<feed><skip><item type=\"trade\"/></skip><item type=\"trade\" qty=\"5\"/><item type=\"quote\"/>"
+				+ "<item type=\"trade\" qty=\"50\"/><item/></feed>";
+		FilterXmlVisitor visitor = new FilterXmlVisitor();
+		BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		source.setEngine(BenderXmlSource.Engine.STAX);
+		source.accept(visitor);
+		assertEquals("trade other large other", visitor.visits.toString().trim());
+		
+		visitor = new FilterXmlVisitor();
+		source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		source.open(visitor);
+		int steps = 0;
+		while (source.next()) {
+			steps++;
+			assertEquals(steps, visitor.visits.toString().trim().split(" ").length);
+		}
+		assertEquals(4, steps);
+		
+		xml = "<feed><header id=\"1\"/><item><a/><b/></item><item/><item/></feed>";
+		ControlXmlVisitor control = new ControlXmlVisitor();
+		source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		source.setEngine(BenderXmlSource.Engine.STAX);
+		source.accept(control);
+		assertEquals("header item end", control.visits.toString().trim());
+	}
+	
+	public void testAttributeNames() throws Exception {
+		String xml = "<feed xmlns:x=\"urn:x\"><item id=\"1\" price=\"2.5\" x:code=\"a\"/>"
+				+ "<item x:code=\"b\" price=\"1.5\" id=\"2\"/><item/></feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			AttributeXmlVisitor visitor = new AttributeXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			assertEquals("1:2.5:a 2:1.5:b 0:0.0:null", visitor.visits.toString().trim());
+		}
+	}
+	
+	public void testPrefixedNames() throws Exception {
+		String xml = "<x:feed xmlns:x=\"urn:x\"><x:item x:code=\"a\"/><item x:code=\"b\"/><x:item x:code=\"c\"/></x:feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			PrefixedXmlVisitor visitor = new PrefixedXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			assertEquals("a c", visitor.visits.toString().trim());
+		}
+	}
+	
+	public void testText() throws Exception {
+		String xml = "<people><person id=\"1\"><name> Ann </name><age>42</age><note>a<b>x</b>b</note></person>"
+				+ "<person id=\"2\"><age>-7</age><name><![CDATA[B&b]]></name><name>Bob</name></person><person/></people>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			ElementTextXmlVisitor visitor = new ElementTextXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			assertEquals("note:ab 1:Ann:42 2:B&b:-7 0:null:0", visitor.visits.toString().trim());
+		}
+	}
+	
+	public void testConverters() throws Exception {
+		BenderXmlConverters converters = new BenderXmlConverters();
+		converters.register(Point.class, v -> v == null ? null : new Point("x=" + v));
+		String xml = "<feed><item status=\"OPEN\" qty=\"3\" day=\"2015-03-01\" point=\"1,2\">"
+				+ "<price>-12.50</price><total>1e3</total></item><item/></feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			ConverterXmlVisitor visitor = new ConverterXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.setConverters(converters);
+			source.accept(visitor);
+			assertEquals("OPEN:3:2015-03-01:(x=1,2):-12.5:1000.0 null:null:null:null:0.0:null", visitor.visits.toString().trim());
+		}
+		// Other sources keep the built-in converters, Point being converted with its constructor
+		BenderSession session = new BenderSession();
+		ConverterXmlVisitor visitor = new ConverterXmlVisitor();
+		new BenderXmlSource(session, new ByteArrayInputStream(xml.getBytes("UTF-8"))).accept(visitor);
+		assertEquals("OPEN:3:2015-03-01:(1,2):-12.5:1000.0 null:null:null:null:0.0:null", visitor.visits.toString().trim());
+		BenderXmlSource source = new BenderXmlSource(session, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		source.setConverters(converters);
+		try {
+			source.accept(new ConverterXmlVisitor());
+			fail("Bindings shared by sources with other converters");
+		} catch (BenderException e) {
+			// Registered with the built-in converters
+		}
+		assertEquals(0.1, BenderXmlConverters.toDouble("0.1"));
+		assertEquals(-0.0, BenderXmlConverters.toDouble("-0"));
+		assertEquals(123456789012345678.0, BenderXmlConverters.toDouble("123456789012345678"));
+		assertEquals(Long.MIN_VALUE, BenderXmlConverters.toLong("-9223372036854775808"));
+		try {
+			BenderXmlConverters.toInt("2147483648");
+			fail();
+		} catch (NumberFormatException e) {
+			// Out of range
+		}
+	}
+	
+	public void testHardenedProfile() throws Exception {
+		String xml = "<feed xmlns:x=\"urn:x\"><item id=\"1\" price=\"2.5\" x:code=\"a\"/><item id=\"2\"/></feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			for (int i = 0; i < 2; i++) {
+				// The second traversal reuses the parser of the first one
+				AttributeXmlVisitor visitor = new AttributeXmlVisitor();
+				BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+				source.setEngine(engine);
+				source.setProfile(BenderXmlSource.Profile.HARDENED);
+				source.accept(visitor);
+				assertEquals("1:2.5:a 2:0.0:null", visitor.visits.toString().trim());
+			}
+		}
+		// Entity expansion: each entity expands to ten of the previous one
+		StringBuilder lol = new StringBuilder("<!DOCTYPE feed [<!ENTITY lol0 \"lol\">");
+		for (int i = 1; i < 10; i++) {
+			lol.append("<!ENTITY lol").append(i).append(" \"");
+			for (int j = 0; j < 10; j++) {
+				lol.append("&lol").append(i - 1).append(';');
+			}
+			lol.append("\">");
+		}
+		lol.append("]><feed><item><price>&lol9;</price></item></feed>");
+		String dtd = "<!DOCTYPE feed SYSTEM \"file:/nonexistent/feed.dtd\"><feed><item><price>1</price></item></feed>";
+		String ext = "<!DOCTYPE feed [<!ENTITY ext SYSTEM \"file:/nonexistent/ext.txt\">]><feed><item><price>1&ext;</price></item></feed>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			for (String doc : new String[] {dtd, ext, lol.toString()}) {
+				ConverterXmlVisitor visitor = new ConverterXmlVisitor();
+				BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(doc.getBytes("UTF-8")));
+				source.setEngine(engine);
+				source.setProfile(BenderXmlSource.Profile.HARDENED);
+				if (engine == BenderXmlSource.Engine.STAX && doc == dtd) {
+					// DTDs are ignored by StAX
+					source.accept(visitor);
+					assertEquals("null:null:null:null:1.0:null", visitor.visits.toString().trim());
+					continue;
+				}
+				try {
+					source.accept(visitor);
+					fail("Document type accepted by the hardened " + engine + " parser");
+				} catch (BenderException e) {
+					// Document type declarations are rejected by SAX, undeclared entities by StAX
+				}
+			}
+		}
+	}
+	
+	public void testBatch() throws Exception {
+		StringBuilder xml = new StringBuilder("<feed>");
+		for (int i = 0; i < 10; i++) {
+			xml.append("<item id=\"").append(i).append("\"/><row id=\"").append(i).append("\"><price>")
+					.append(i * 10).append("</price></row><tag><name>n").append(i).append("</name></tag>");
+		}
+		xml.append("</feed>");
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			BatchXmlVisitor visitor = new BatchXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			// The last partial batches are flushed at the end of the document
+			assertEquals("[4, 4, 2]", visitor.batches.toString());
+			assertEquals("[3, 3, 3, 1]", visitor.deferredBatches.toString());
+			assertEquals(45, visitor.ids);
+			assertEquals(450, visitor.prices);
+			// Batched text is copied before the buffer is reused by the next element
+			assertEquals("[n0, n1, n2, n3, n4, n5, n6, n7, n8, n9]", visitor.names.toString());
+			assertTrue(visitor.ended);
+		}
+	}
+	
+	public void testSharedPrefix() throws Exception {
+		String xml = "<shop><order id=\"1\"><line id=\"2\"><note id=\"3\"/></line><lines id=\"4\"/></order>"
+				+ "<orders id=\"5\"><line id=\"6\"/></orders><order id=\"7\"><note id=\"8\"/></order></shop>";
+		for (BenderXmlSource.Engine engine : BenderXmlSource.Engine.values()) {
+			PrefixXmlVisitor visitor = new PrefixXmlVisitor();
+			BenderXmlSource source = new BenderXmlSource(new BenderSession(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+			source.setEngine(engine);
+			source.accept(visitor);
+			assertEquals("order:1 line:2 note:3 lines:4 orders:5 order:7", visitor.visits.toString().trim());
+		}
+	}
+	
+	public enum Status {
+		OPEN, CLOSED
+	}
+	
+	public static class Point {
+		
+		private final String text;
+		
+		public Point(String text) {
+			this.text = text;
+		}
+		
+		@Override
+		public String toString() {
+			return "(" + text + ")";
+		}
+	}
+	
+	public static class ConverterXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/feed/item")
+		public void visitItem(@BenderXml("status") Status status, @BenderXml("qty") Integer qty, 
+				@BenderXml("day") LocalDate day, @BenderXml("point") Point point, 
+				@BenderXml("price/text()") double price, @BenderXml("total/text()") BigDecimal total) {
+			visits.append(status).append(':').append(qty).append(':').append(day).append(':').append(point)
+					.append(':').append(price).append(':').append(total == null ? null : total.doubleValue()).append(' ');
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class ElementTextXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/people/person")
+		public void visitPerson(@BenderXml("id") int id, @BenderXml("name/text()") CharSequence name, 
+				@BenderXml("age/text()") int age) {
+			visits.append(id).append(':').append(name).append(':').append(age).append(' ');
+		}
+		
+		@BenderXml("/people/person/note")
+		public void visitNote(@BenderXml("text()") String text) {
+			visits.append("note:").append(text).append(' ');
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class PrefixedXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/x:feed/x:item")
+		public void visitItem(@BenderXml("@x:code") String code) {
+			visits.append(code).append(' ');
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class AttributeXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/feed/item")
+		public void visitItem(@BenderXml("price") double price, @BenderXml("@x:code") String code, 
+				@BenderXml("id") int id) {
+			visits.append(id).append(':').append(price).append(':').append(code).append(' ');
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class FilterXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/feed/item[@type='trade' and @qty > 10]")
+		public void visitLargeTrade() {
+			visits.append("large ");
+		}
+		
+		@BenderXml("/feed/item[@type='trade']")
+		public void visitTrade() {
+			visits.append("trade ");
+		}
+		
+		@BenderXml("/feed/item")
+		public void visitItem() {
+			visits.append("other ");
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class FilterDescendantsXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/feed/item[@type='trade']")
+		public void visitTrade() {
+			visits.append("trade ");
+		}
+		
+		@BenderXml("/feed/item/price")
+		public void visitPrice(@BenderXml("v") int value) {
+			visits.append("price:").append(value).append(' ');
+		}
+		
+		@BenderXml("/feed/item[@type='trade']/qty")
+		public void visitTradeQty(@BenderXml("v") int value) {
+			visits.append("qty:").append(value).append(' ');
+		}
+		
+		@BenderXml("/feed/item/qty")
+		public void visitQty(@BenderXml("v") int value) {
+			visits.append("qty:").append(value).append(' ');
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class ReversedFilterXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/feed/item")
+		public void visitItem() {
+			visits.append("other ");
+		}
+		
+		@BenderXml("/feed/item[@type='trade']")
+		public void visitTrade() {
+			visits.append("trade ");
+		}
+		
+		@BenderXml("/feed/item[@type='trade' and @qty > 10]")
+		public void visitLargeTrade() {
+			visits.append("large ");
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class BatchXmlVisitor implements BenderVisitor {
+		
+		private final List<Integer> batches = new ArrayList<>();
+		
+		private final List<Integer> deferredBatches = new ArrayList<>();
+		
+		private int ids;
+		
+		private int prices;
+		
+		private final List<String> names = new ArrayList<>();
+		
+		private boolean ended;
+		
+		@BenderXml("/feed/item")
+		@BenderBatch(4)
+		public void visitItems(@BenderXml("id") int[] ids) {
+			assertFalse(ended);
+			batches.add(ids.length);
+			for (int id : ids) {
+				this.ids += id;
+			}
+		}
+		
+		@BenderXml("/feed/row")
+		@BenderBatch(3)
+		public void visitPrices(@BenderXml("id") String[] ids, @BenderXml("price/text()") int[] prices) {
+			assertFalse(ended);
+			assertEquals(ids.length, prices.length);
+			deferredBatches.add(prices.length);
+			for (int i = 0; i < prices.length; i++) {
+				assertEquals(Integer.parseInt(ids[i]) * 10, prices[i]);
+				this.prices += prices[i];
+			}
+		}
+		
+		@BenderXml("/feed/tag")
+		@BenderBatch(3)
+		public void visitNames(@BenderXml("name/text()") CharSequence[] names) {
+			for (CharSequence name : names) {
+				this.names.add(name.toString());
+			}
+		}
+		
+		@Override
+		public void visitEnd() {
+			ended = true;
+		}
+	}
+	
+	public static class PrefixXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/shop/order")
+		public void visitOrder(@BenderXml("id") int id) {
+			visits.append("order:").append(id).append(' ');
+		}
+		
+		@BenderXml("/shop/order/line")
+		public void visitLine(@BenderXml("id") int id) {
+			visits.append("line:").append(id).append(' ');
+		}
+		
+		@BenderXml("/shop/order/line/note")
+		public void visitNote(@BenderXml("id") int id) {
+			visits.append("note:").append(id).append(' ');
+		}
+		
+		@BenderXml("/shop/order/lines")
+		public void visitLines(@BenderXml("id") int id) {
+			visits.append("lines:").append(id).append(' ');
+		}
+		
+		@BenderXml("/shop/orders")
+		public void visitOrders(@BenderXml("id") int id) {
+			visits.append("orders:").append(id).append(' ');
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class ControlXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		@BenderXml("/feed/header")
+		public void visitHeader() {
+			visits.append("header ");
+		}
+		
+		@BenderXml("/feed/item")
+		public BenderControl visitItem() {
+			visits.append("item ");
+			return BenderControl.TERMINATE;
+		}
+		
+		@BenderXml("/feed/item/a")
+		public void visitA() {
+			visits.append("a ");
+		}
+		
+		@Override
+		public void visitEnd() {
+			visits.append("end");
+		}
+	}
+	
+	public static class DeferredControlXmlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		private final BenderControl control;
+		
+		public DeferredControlXmlVisitor(BenderControl control) {
+			this.control = control;
+		}
+		
+		@BenderXml("/feed/item")
+		public BenderControl visitItem(@BenderXml("name/text()") String name) {
+			visits.append(name).append(' ');
+			return name.equals("b") ? control : BenderControl.CONTINUE;
+		}
+		
+		@Override
+		public void visitEnd() {
+			visits.append("end");
+		}
+	}
+	
+	public static class CountXmlVisitor implements BenderVisitor {
+		
+		private final AtomicInteger count;
+		
+		public CountXmlVisitor(AtomicInteger count) {
+			this.count = count;
+		}
+		
+		@BenderXml("/test/tag1/tag11")
+		public void visitTag11() {
+			count.incrementAndGet();
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
 	public static class TextXmlVisitor  {
 		
 		@BenderXml(value="test/tag1")
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Binds a visitor method to batches of matches instead of single ones.
+ * <p>Each parameter of a batched method is an array of the type it would have in a non batched method,
+ * and all arrays have the same length: the number of matches in the batch. The source calls the method 
+ * when <code>value</code> matches are collected or before calling {@link BenderVisitor#visitEnd()} 
+ * on the visitor, so batched methods are called after other visitor methods of the same matches.
+ * <p>Full batches reuse the same arrays, visitors must copy them to keep their values after the call. 
+ * Batched methods cannot return nested visitors.
+ * <p>Bean sources copy primitive arrays in bulk to batched methods with a single <code>this</code> 
+ * parameter of the same array type, so they receive slices of the array.
+ * <br/>See this sample visitor method:
+ * 
+ * <pre>{@code 
+ *    @Bender("this.persons[]")
+ *    @BenderBatch(100)
+ *    public void visitPersons(@Bender("name") String[] names, @Bender("age") int[] ages) {
+ *       // Insert rows...
+ *    }}</pre>
+ * 
+ * @author Jordi Carretero
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BenderBatch {
+
+	/**
+	 * @return the maximum number of matches per call
+	 */
+	int value();
+	
+}
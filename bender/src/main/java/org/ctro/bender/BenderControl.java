@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+/**
+ * <p>Traversal control signals returned by visitor methods.
+ * <p>Visitor methods can return one of these values instead of a nested {@link BenderVisitor} to 
+ * change how the source goes on with the traversal. Returning <code>null</code> is the same as 
+ * returning {@link #CONTINUE}.
+ * 
+ * @author Jordi Carretero
+ *
+ */
+public enum BenderControl {
+
+	/**
+	 * Goes on with the traversal
+	 */
+	CONTINUE,
+	
+	/**
+	 * Skips the rest of the current subtree. XML sources skip the content of the matched element, 
+	 * bean sources skip the remaining bindings and elements of the bean being visited.
+	 */
+	SKIP,
+	
+	/**
+	 * Stops the whole traversal. Visitors already started are ended calling {@link BenderVisitor#visitEnd()} 
+	 * and the source returns normally.
+	 */
+	TERMINATE
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+/**
+ * <p>Typed dispatcher for the annotated methods of a visitor class.
+ * <p>Implementations are generated at compile time by the <code>bender-processor</code> module
+ * as <code>&lt;VisitorBinaryName&gt;$BenderDispatcher</code>. When such a class is found,
+ * {@link BenderSource#register(Class)} uses it instead of scanning the visitor methods and
+ * visitor methods are called directly instead of through reflection.
+ *
+ * @author Jordi Carretero
+ *
+ */
+public interface BenderDispatcher {
+
+	/**
+	 * Suffix appended to the visitor binary name to get the dispatcher class name
+	 */
+	String SUFFIX = "$BenderDispatcher";
+
+	/**
+	 * @return The number of dispatched methods
+	 */
+	int size();
+
+	/**
+	 * @param index The method index
+	 * @return The binding annotation class name of the method
+	 */
+	String getAnnotationName(int index);
+
+	/**
+	 * @param index The method index
+	 * @return The method name
+	 */
+	String getMethodName(int index);
+
+	/**
+	 * @param index The method index
+	 * @return The method parameter types
+	 */
+	Class<?>[] getParameterTypes(int index);
+
+	/**
+	 * Invokes the method with the given index.
+	 *
+	 * @param visitor The visitor instance
+	 * @param index The method index
+	 * @param args The method arguments
+	 * @return The method result or <code>null</code> for void methods
+	 * @throws Exception
+	 */
+	Object invoke(Object visitor, int index, Object[] args) throws Exception;
+
+	/**
+	 * Invokes the method with the given index and no parameters.
+	 *
+	 * @param visitor The visitor instance
+	 * @param index The method index
+	 * @return The method result or <code>null</code> for void methods
+	 * @throws Exception
+	 */
+	default Object invoke(Object visitor, int index) throws Exception {
+		return invoke(visitor, index, new Object[0]);
+	}
+
+	/**
+	 * Invokes the method with the given index and one parameter.
+	 *
+	 * @param visitor The visitor instance
+	 * @param index The method index
+	 * @param arg0 The first argument
+	 * @return The method result or <code>null</code> for void methods
+	 * @throws Exception
+	 */
+	default Object invoke(Object visitor, int index, Object arg0) throws Exception {
+		return invoke(visitor, index, new Object[] { arg0 });
+	}
+
+	/**
+	 * Invokes the method with the given index and two parameters.
+	 *
+	 * @param visitor The visitor instance
+	 * @param index The method index
+	 * @param arg0 The first argument
+	 * @param arg1 The second argument
+	 * @return The method result or <code>null</code> for void methods
+	 * @throws Exception
+	 */
+	default Object invoke(Object visitor, int index, Object arg0, Object arg1) throws Exception {
+		return invoke(visitor, index, new Object[] { arg0, arg1 });
+	}
+
+	/**
+	 * Invokes the method with the given index and three parameters.
+	 *
+	 * @param visitor The visitor instance
+	 * @param index The method index
+	 * @param arg0 The first argument
+	 * @param arg1 The second argument
+	 * @param arg2 The third argument
+	 * @return The method result or <code>null</code> for void methods
+	 * @throws Exception
+	 */
+	default Object invoke(Object visitor, int index, Object arg0, Object arg1, Object arg2) throws Exception {
+		return invoke(visitor, index, new Object[] { arg0, arg1, arg2 });
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+/**
+ * <p>Visitor that can traverse parts of a source in parallel.
+ * <p>When a source is configured to traverse large targets in parallel, each chunk is visited by a new 
+ * visitor created with {@link #fork()} and the results are collected calling {@link #merge(BenderParallelVisitor)}
+ * on the visitor that forked them, in encounter order and from the thread that started the traversal. 
+ * Chunk visitors are used by one thread at a time and {@link #visitEnd()} is only called on the merged visitor.
+ * 
+ * @param <V> The visitor type
+ * 
+ * @author Jordi Carretero
+ *
+ */
+public interface BenderParallelVisitor<V extends BenderParallelVisitor<V>> extends BenderVisitor {
+
+	/**
+	 * Creates a visitor to traverse one chunk of the target of this visitor
+	 * 
+	 * @return The chunk visitor
+	 */
+	V fork();
+	
+	/**
+	 * Merges the results of a chunk visitor created by {@link #fork()}
+	 * 
+	 * @param chunk The chunk visitor
+	 */
+	void merge(V chunk);
+}
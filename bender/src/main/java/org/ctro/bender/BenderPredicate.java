@@ -0,0 +1,474 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Filter compiled from a predicate of a binding key.
+ * <p>Predicates are parsed once when a visitor is registered, and the references they contain are
+ * compiled by the source into {@link Operand}s, so testing an element does not need any string
+ * processing. The predicate grammar is:
+ *
+ * <pre>
+ * or         := and (("||" | "or") and)*
+ * and        := unary (("&amp;&amp;" | "and") unary)*
+ * unary      := "!" unary | "(" or ")" | operand [comparator operand]
+ * comparator := "==" | "=" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;="
+ * operand    := reference | string | number | "true" | "false" | "null"</pre>
+ *
+ * <p>Strings are quoted with single or double quotes. The syntax of references is defined by each
+ * source. An operand without comparator is true if its value is {@link Boolean#TRUE} or any other
+ * non-null value.
+ * <p>Numbers are compared by value, also with strings holding a number, and strings are compared with
+ * the text of other values, like enum names. Values that cannot be compared are only different.
+ *
+ * @author Jordi Carretero
+ *
+ */
+public final class BenderPredicate {
+
+	/**
+	 * Value read from the tested element
+	 */
+	public interface Operand {
+
+		/**
+		 * @param context The tested element
+		 * @return The operand value
+		 * @throws BenderException
+		 */
+		Object get(Object context) throws BenderException;
+	}
+
+	/**
+	 * Compiles the references of a predicate
+	 */
+	public interface Resolver {
+
+		/**
+		 * @param reference The reference text
+		 * @return The compiled operand
+		 * @throws BenderException If the reference is not valid
+		 */
+		Operand compile(String reference) throws BenderException;
+	}
+
+	private final String expression;
+
+	private final Condition condition;
+
+	private BenderPredicate(String expression, Condition condition) {
+		this.expression = expression;
+		this.condition = condition;
+	}
+
+	/**
+	 * Compiles the given predicate
+	 *
+	 * @param expression The predicate
+	 * @param resolver The compiler of the predicate references
+	 * @return The compiled predicate
+	 * @throws BenderException If the predicate is not valid
+	 */
+	public static BenderPredicate compile(String expression, Resolver resolver) throws BenderException {
+		Parser parser = new Parser(expression, resolver);
+		Condition c = parser.or();
+		if (parser.i < parser.tokens.size()) {
+			throw parser.error();
+		}
+		return new BenderPredicate(expression, c);
+	}
+
+	/**
+	 * Tests an element
+	 *
+	 * @param context The element
+	 * @return <code>true</code> if the element matches the predicate
+	 * @throws BenderException If an operand cannot be read
+	 */
+	public boolean test(Object context) throws BenderException {
+		return condition.test(context);
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	private interface Condition {
+
+		boolean test(Object context) throws BenderException;
+	}
+
+	private static final class And implements Condition {
+
+		private final Condition left, right;
+
+		And(Condition left, Condition right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public boolean test(Object context) throws BenderException {
+			return left.test(context) && right.test(context);
+		}
+	}
+
+	private static final class Or implements Condition {
+
+		private final Condition left, right;
+
+		Or(Condition left, Condition right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public boolean test(Object context) throws BenderException {
+			return left.test(context) || right.test(context);
+		}
+	}
+
+	private static final class Not implements Condition {
+
+		private final Condition condition;
+
+		Not(Condition condition) {
+			this.condition = condition;
+		}
+
+		@Override
+		public boolean test(Object context) throws BenderException {
+			return !condition.test(context);
+		}
+	}
+
+	private static final class Value implements Condition {
+
+		private final Operand operand;
+
+		Value(Operand operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		public boolean test(Object context) throws BenderException {
+			Object v = operand.get(context);
+			return v instanceof Boolean ? (Boolean) v : v != null;
+		}
+	}
+
+	private static final class Compare implements Condition {
+
+		private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+		private final Operand left, right;
+
+		private final int comparator;
+
+		Compare(Operand left, String comparator, Operand right) {
+			this.left = left;
+			this.right = right;
+			switch (comparator) {
+			case "!=":
+				this.comparator = NE;
+				break;
+			case "<":
+				this.comparator = LT;
+				break;
+			case "<=":
+				this.comparator = LE;
+				break;
+			case ">":
+				this.comparator = GT;
+				break;
+			case ">=":
+				this.comparator = GE;
+				break;
+			default:
+				this.comparator = EQ;
+			}
+		}
+
+		@Override
+		public boolean test(Object context) throws BenderException {
+			Integer c = compare(left.get(context), right.get(context));
+			if (c == null) {
+				return comparator == NE;
+			}
+			switch (comparator) {
+			case EQ:
+				return c == 0;
+			case NE:
+				return c != 0;
+			case LT:
+				return c < 0;
+			case LE:
+				return c <= 0;
+			case GT:
+				return c > 0;
+			default:
+				return c >= 0;
+			}
+		}
+	}
+
+	/**
+	 * Literal operand
+	 */
+	private static final class Literal implements Operand {
+
+		private final Object value;
+
+		Literal(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object get(Object context) {
+			return value;
+		}
+	}
+
+	/**
+	 * Compares two values
+	 *
+	 * @return The comparison result or <code>null</code> if the values cannot be compared
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Integer compare(Object a, Object b) {
+		if (a == null || b == null) {
+			return a == b ? 0 : null;
+		}
+		if (a instanceof CharSequence && b instanceof Number) {
+			Integer c = compare(b, a);
+			return c != null ? -c : null;
+		}
+		if (a instanceof Number) {
+			Number n;
+			if (b instanceof Number) {
+				n = (Number) b;
+			} else if (b instanceof CharSequence) {
+				n = parse(b.toString());
+				if (n == null) {
+					return null;
+				}
+			} else {
+				return null;
+			}
+			if (isIntegral(a) && isIntegral(n)) {
+				return Long.compare(((Number) a).longValue(), n.longValue());
+			}
+			return Double.compare(((Number) a).doubleValue(), n.doubleValue());
+		}
+		if (a instanceof CharSequence || b instanceof CharSequence) {
+			return Integer.signum(text(a).compareTo(text(b)));
+		}
+		if (a.getClass() == b.getClass() && a instanceof Comparable) {
+			return Integer.signum(((Comparable) a).compareTo(b));
+		}
+		return a.equals(b) ? 0 : null;
+	}
+
+	private static boolean isIntegral(Object n) {
+		return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+	}
+
+	private static String text(Object value) {
+		return value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+	}
+
+	private static Number parse(String s) {
+		try {
+			if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+				return Long.parseLong(s.trim());
+			}
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Recursive descent parser of the predicate grammar
+	 */
+	private static final class Parser {
+
+		private final String expression;
+
+		private final Resolver resolver;
+
+		private final List<String> tokens = new ArrayList<>();
+
+		private int i;
+
+		Parser(String expression, Resolver resolver) throws BenderException {
+			this.expression = expression;
+			this.resolver = resolver;
+			tokenize();
+		}
+
+		Condition or() throws BenderException {
+			Condition c = and();
+			while (accept("||") || accept("or")) {
+				c = new Or(c, and());
+			}
+			return c;
+		}
+
+		private Condition and() throws BenderException {
+			Condition c = unary();
+			while (accept("&&") || accept("and")) {
+				c = new And(c, unary());
+			}
+			return c;
+		}
+
+		private Condition unary() throws BenderException {
+			if (accept("!")) {
+				return new Not(unary());
+			} else if (accept("(")) {
+				Condition c = or();
+				if (!accept(")")) {
+					throw error();
+				}
+				return c;
+			}
+			Operand left = operand();
+			String t = peek();
+			if (t != null && isComparator(t)) {
+				i++;
+				return new Compare(left, t, operand());
+			}
+			return new Value(left);
+		}
+
+		private Operand operand() throws BenderException {
+			String t = peek();
+			if (t == null || isOperator(t)) {
+				throw error();
+			}
+			i++;
+			char c = t.charAt(0);
+			if (c == '\'' || c == '"') {
+				return new Literal(t.substring(1, t.length() - 1));
+			} else if (Character.isDigit(c) || c == '-') {
+				Number n = parse(t);
+				if (n == null) {
+					throw error();
+				}
+				return new Literal(n);
+			} else if ("true".equals(t) || "false".equals(t)) {
+				return new Literal(Boolean.valueOf(t));
+			} else if ("null".equals(t)) {
+				return new Literal(null);
+			}
+			return resolver.compile(t);
+		}
+
+		private String peek() {
+			return i < tokens.size() ? tokens.get(i) : null;
+		}
+
+		private boolean accept(String token) {
+			if (token.equals(peek())) {
+				i++;
+				return true;
+			}
+			return false;
+		}
+
+		BenderException error() {
+			String t = peek();
+			return new BenderException((t == null ? "Unexpected end" : "Unexpected '" + t + "'")
+					+ " in predicate " + expression);
+		}
+
+		private static boolean isComparator(String t) {
+			switch (t) {
+			case "==":
+			case "=":
+			case "!=":
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		private static boolean isOperator(String t) {
+			return isComparator(t) || t.equals("&&") || t.equals("||") || t.equals("!") || t.equals("(")
+					|| t.equals(")") || t.equals("and") || t.equals("or");
+		}
+
+		private void tokenize() throws BenderException {
+			int length = expression.length();
+			int p = 0;
+			while (p < length) {
+				char c = expression.charAt(p);
+				int start = p;
+				if (Character.isWhitespace(c)) {
+					p++;
+					continue;
+				} else if (c == '\'' || c == '"') {
+					p = expression.indexOf(c, p + 1);
+					if (p < 0) {
+						throw new BenderException("Unterminated string in predicate " + expression);
+					}
+					p++;
+				} else if ("=!<>".indexOf(c) >= 0) {
+					p += p + 1 < length && expression.charAt(p + 1) == '=' ? 2 : 1;
+				} else if (c == '&' || c == '|') {
+					if (p + 1 == length || expression.charAt(p + 1) != c) {
+						throw new BenderException("Unexpected '" + c + "' in predicate " + expression);
+					}
+					p += 2;
+				} else if (c == '(' || c == ')') {
+					p++;
+				} else if (c == '-' || Character.isDigit(c)) {
+					p++;
+					while (p < length && (Character.isLetterOrDigit(expression.charAt(p))
+							|| expression.charAt(p) == '.')) {
+						p++;
+					}
+				} else {
+					// Reference: names, dots, namespace prefixes, attribute marks and method calls
+					while (p < length) {
+						char d = expression.charAt(p);
+						if (Character.isLetterOrDigit(d) || "_$.:@-".indexOf(d) >= 0) {
+							p++;
+						} else if (d == '(' && p + 1 < length && expression.charAt(p + 1) == ')') {
+							p += 2;
+						} else {
+							break;
+						}
+					}
+					if (p == start) {
+						throw new BenderException("Unexpected '" + c + "' in predicate " + expression);
+					}
+				}
+				tokens.add(expression.substring(start, p));
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+/**
+ * <p>Visitor notified of the beans it has already visited.
+ * <p>When a source visits each bean once, a bean reached again by a visitor of the same class is not
+ * traversed: visitors implementing this interface get a {@link #visitReference(Object)} call instead,
+ * other visitors just skip it.
+ *
+ * @author Jordi Carretero
+ *
+ */
+public interface BenderReferenceVisitor extends BenderVisitor {
+
+	/**
+	 * Handler called instead of traversing a bean already visited by a visitor of this class
+	 *
+	 * @param bean The visited bean
+	 */
+	void visitReference(Object bean);
+}
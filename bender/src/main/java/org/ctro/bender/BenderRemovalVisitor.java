@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+import java.lang.reflect.Method;
+
+/**
+ * <p>Visitor notified of the beans that are no longer reached.
+ * <p>When a source only calls the visitor methods whose parameter values changed since the previous 
+ * traversal, a root visitor implementing this interface gets a {@link #visitRemoved(Object, Method)} call 
+ * for each bean that a method was called for in previous traversals but was not reached by the current 
+ * one. Removals are notified before {@link #visitEnd()}.
+ *
+ * @author Jordi Carretero
+ *
+ */
+public interface BenderRemovalVisitor extends BenderVisitor {
+
+	/**
+	 * Handler called for a bean no longer reached by a visitor method
+	 *
+	 * @param bean The removed bean
+	 * @param method The visitor method that was called for the bean
+	 */
+	void visitRemoved(Object bean, Method method);
+}
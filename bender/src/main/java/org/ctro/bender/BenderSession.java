@@ -17,13 +17,33 @@
 package org.ctro.bender;
 
 import java.lang.annotation.Annotation;
-import java.util.HashMap;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <p>Caches all binding data from visitors to speed up the visiting process.
  * <p>Visitors can be registered before first execution calling {@link BenderSource#register(Class)}.
+ * <p>Sessions are thread-safe and are meant to be shared by all the sources of an application. 
+ * Bindings are created once per visitor class, even when several threads register it at the same 
+ * time, and published as immutable snapshots so reading them does not need any lock.
+ * <p>Bindings are attached to the visitor class through a {@link ClassValue}, so the session does not
+ * prevent visitor classes and their class loaders from being unloaded. Sessions created with a maximum
+ * size evict the least recently used bindings when the size is exceeded.
  * 
  * @see BenderSource
  * 
@@ -32,13 +52,56 @@ import java.util.Map;
  */
 public final class BenderSession {
 
-	private Map<String, Map<Class<?>, BenderBindings<?>>> bindings = new HashMap<>();
+	private final int maximumSize;
+	
+	private volatile ClassValue<VisitorBindings> visitors = newVisitors();
+	
+	/**
+	 * Cached entries in eviction order
+	 */
+	private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Entries of unloaded visitor classes
+	 */
+	private final ReferenceQueue<Class<?>> unloaded = new ReferenceQueue<>();
+	
+	private final AtomicInteger size = new AtomicInteger();
+	
+	private final LongAdder hits = new LongAdder();
+	
+	private final LongAdder misses = new LongAdder();
+	
+	private final LongAdder evictions = new LongAdder();
+	
+	/**
+	 * Creates a session without size limit
+	 */
+	public BenderSession() {
+		this(0);
+	}
+	
+	/**
+	 * Creates a session that holds up to <code>maximumSize</code> visitor bindings
+	 * 
+	 * @param maximumSize The maximum number of cached bindings or 0 for no limit
+	 */
+	public BenderSession(int maximumSize) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("Maximum size cannot be negative");
+		}
+		this.maximumSize = maximumSize;
+	}
 	
 	/**
 	 * Clears all visitors cache
 	 */
 	public void clear() {
-		bindings.clear();
+		visitors = newVisitors();
+		Entry e;
+		while ((e = entries.poll()) != null) {
+			remove(e);
+		}
 	}
 	
 	/**
@@ -47,32 +110,282 @@ public final class BenderSession {
 	 * @param c The {@link BenderSource} class
 	 */
 	public void clear(Class<? extends BenderSource<? extends Annotation>> c) {
-		Map<Class<?>, BenderBindings<?>> map = bindings.get(c.getCanonicalName());
-		if (map != null) {
-			map.clear();
+		for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+			Entry e = it.next();
+			if (e.source.get() == c) {
+				it.remove();
+				remove(e);
+			}
 		}
 	}
+	
+	/**
+	 * @return The maximum number of cached bindings or 0 if the session has no limit
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+	
+	/**
+	 * @return The number of cached bindings, one per visitor and source class
+	 */
+	public int size() {
+		expunge();
+		return size.get();
+	}
+	
+	/**
+	 * @return The number of lookups that found the visitor bindings in the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	/**
+	 * @return The number of lookups that had to create the visitor bindings
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	/**
+	 * @return The number of bindings evicted to keep the session under its maximum size
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
 
-	BenderBindings<?> getBindings(String source, Class<?> visitorClass) {
-		Map<Class<?>, BenderBindings<?>> map = bindings.get(source);
-		if (map == null) {
-			bindings.put(source, map = new HashMap<>());
+	/**
+	 * Gets the bindings of a visitor class, creating them with the given factory if they do not exist yet.
+	 * The factory is called at most once per visitor class.
+	 */
+	BenderBindings<?> getBindings(Class<?> source, Class<?> visitorClass, BindingsFactory factory) throws BenderException {
+		ClassValue<VisitorBindings> visitors = this.visitors;
+		ConcurrentMap<Class<?>, BenderBindings<?>> map = visitors.get(visitorClass).bindings;
+		BenderBindings<?> b = map.get(source);
+		if (b == null) {
+			Entry[] created = new Entry[1];
+			try {
+				b = map.computeIfAbsent(source, c -> {
+					try {
+						BenderBindings<?> n = factory.create();
+						n.entry = created[0] = new Entry(visitorClass, source, visitors, unloaded);
+						return n;
+					} catch (BenderException e) {
+						throw new FactoryException(e);
+					}
+				});
+			} catch (FactoryException e) {
+				throw (BenderException) e.getCause();
+			}
+			if (created[0] != null) {
+				misses.increment();
+				entries.add(created[0]);
+				size.incrementAndGet();
+				expunge();
+				evict();
+				return b;
+			}
+		}
+		hits.increment();
+		if (!b.entry.accessed) {
+			b.entry.accessed = true;
+		}
+		return b;
+	}
+	
+	/**
+	 * Replaces the bindings of a visitor class if they have not changed since they were read.
+	 * 
+	 * @return The bindings in the session after the call, or the given ones if the visitor was evicted
+	 */
+	BenderBindings<?> replaceBindings(Class<?> source, Class<?> visitorClass, BenderBindings<?> expected, 
+			BenderBindings<?> bindings) {
+		ClassValue<VisitorBindings> visitors = expected.entry.visitors.get();
+		if (visitors == null) {
+			return bindings;
 		}
-		return map.get(visitorClass);
+		ConcurrentMap<Class<?>, BenderBindings<?>> map = visitors.get(visitorClass).bindings;
+		if (map.replace(source, expected, bindings)) {
+			return bindings;
+		}
+		BenderBindings<?> current = map.get(source);
+		return current != null ? current : bindings;
 	}
 	
-	void putBindings(String source, Class<?> visitorClass, BenderBindings<?> context) {
-		Map<Class<?>, BenderBindings<?>> map = bindings.get(source);
-		if (map == null) {
-			bindings.put(source, map = new HashMap<>());
+	private void remove(Entry e) {
+		if (e.removed.compareAndSet(false, true)) {
+			size.decrementAndGet();
+			Class<?> visitorClass = e.get();
+			Class<?> source = e.source.get();
+			ClassValue<VisitorBindings> visitors = e.visitors.get();
+			if (visitorClass != null && source != null && visitors != null) {
+				visitors.get(visitorClass).bindings.remove(source);
+			}
+		}
+	}
+	
+	/**
+	 * Removes the entries of unloaded visitor classes
+	 */
+	private void expunge() {
+		Reference<? extends Class<?>> r;
+		while ((r = unloaded.poll()) != null) {
+			Entry e = (Entry) r;
+			if (e.removed.compareAndSet(false, true)) {
+				size.decrementAndGet();
+			}
+			entries.remove(e);
+		}
+	}
+	
+	/**
+	 * Evicts entries until the session size is under its maximum. Recently used entries get a 
+	 * second chance before being evicted.
+	 */
+	private void evict() {
+		if (maximumSize == 0) {
+			return;
+		}
+		Entry e;
+		while (size.get() > maximumSize && (e = entries.poll()) != null) {
+			if (e.removed.get()) {
+				continue;
+			}
+			if (e.accessed && e.get() != null) {
+				e.accessed = false;
+				entries.add(e);
+			} else {
+				remove(e);
+				evictions.increment();
+			}
+		}
+	}
+	
+	private static ClassValue<VisitorBindings> newVisitors() {
+		return new ClassValue<VisitorBindings>() {
+			@Override
+			protected VisitorBindings computeValue(Class<?> type) {
+				return new VisitorBindings();
+			}
+		};
+	}
+	
+	interface BindingsFactory {
+		
+		BenderBindings<?> create() throws BenderException;
+	}
+	
+	/**
+	 * Bindings of a visitor class by source class
+	 */
+	private static class VisitorBindings {
+		
+		final ConcurrentMap<Class<?>, BenderBindings<?>> bindings = new ConcurrentHashMap<>(4);
+	}
+	
+	/**
+	 * Cache entry of a visitor class and a source class. It does not keep any of them reachable, nor 
+	 * the class value holding its bindings: the bindings are a value of that class value, so a strong 
+	 * reference would keep it and all its values alive as long as the visitor class once the session 
+	 * is dropped or cleared.
+	 */
+	static final class Entry extends WeakReference<Class<?>> {
+		
+		final WeakReference<Class<?>> source;
+		
+		final WeakReference<ClassValue<VisitorBindings>> visitors;
+		
+		final AtomicBoolean removed = new AtomicBoolean();
+		
+		volatile boolean accessed = true;
+		
+		Entry(Class<?> visitorClass, Class<?> source, ClassValue<VisitorBindings> visitors, 
+				ReferenceQueue<Class<?>> queue) {
+			super(visitorClass, queue);
+			this.source = new WeakReference<Class<?>>(source);
+			this.visitors = new WeakReference<ClassValue<VisitorBindings>>(visitors);
+		}
+	}
+	
+	private static class FactoryException extends RuntimeException {
+		
+		private static final long serialVersionUID = 1L;
+
+		FactoryException(BenderException cause) {
+			super(cause);
 		}
-		map.put(visitorClass, context);
 	}
 
 }
 
-class BenderBindings<A extends Annotation> extends LinkedHashMap<String, MethodBinding<A>> {
+/**
+ * <p>Bindings of a root visitor class and all the visitor classes reachable from it.
+ * <p>Bindings are only modified before being published in a {@link BenderSession}. New visitor classes
+ * found at runtime are added to a copy that replaces the published one.
+ */
+final class BenderBindings<A extends Annotation> {
 	
-	private static final long serialVersionUID = 1L;
+	/**
+	 * Visitor class these bindings are registered for
+	 */
+	final Class<?> rootClass;
+	
+	private final Map<String, MethodBinding<A>> bindings;
+	
+	private final Map<String, MethodBinding<A>> view;
+	
+	/**
+	 * All bindings in registration order, including the ones hidden in the map by others with the same key
+	 */
+	private final List<MethodBinding<A>> values;
+	
+	/**
+	 * Visitor classes whose methods are included in these bindings
+	 */
+	final Set<Class<?>> visitorClasses;
+	
+	/**
+	 * Session cache entry of these bindings
+	 */
+	BenderSession.Entry entry;
+	
+	/**
+	 * Bindings compiled by {@link BenderSource#compileBindings(java.util.Collection)}
+	 */
+	volatile Object compiled;
+	
+	BenderBindings(Class<?> rootClass) {
+		this.rootClass = rootClass;
+		this.bindings = new LinkedHashMap<>();
+		this.values = new ArrayList<>();
+		this.visitorClasses = new HashSet<>();
+		this.view = Collections.unmodifiableMap(bindings);
+	}
+	
+	BenderBindings(BenderBindings<A> that) {
+		this.rootClass = that.rootClass;
+		this.entry = that.entry;
+		this.bindings = new LinkedHashMap<>(that.bindings);
+		this.values = new ArrayList<>(that.values);
+		this.visitorClasses = new HashSet<>(that.visitorClasses);
+		this.view = Collections.unmodifiableMap(bindings);
+	}
+	
+	MethodBinding<A> get(String key) {
+		return bindings.get(key);
+	}
+	
+	void put(String key, MethodBinding<A> binding) {
+		bindings.put(key, binding);
+		values.add(binding);
+	}
+	
+	List<MethodBinding<A>> values() {
+		return Collections.unmodifiableList(values);
+	}
+	
+	Map<String, MethodBinding<A>> asMap() {
+		return view;
+	}
 }
-
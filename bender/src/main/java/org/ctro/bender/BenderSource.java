@@ -17,8 +17,20 @@
 package org.ctro.bender;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.ctro.bender.MethodBinding.ParamBinding;
 
 /**
  * 
@@ -38,9 +50,17 @@ public abstract class BenderSource<A extends Annotation> {
 	 */
 	protected static Object[] VOID_ARGS = new Object[0];
 	
-	private BenderSession session;
+	private final BenderSession session;
 	
+	/**
+	 * Bindings of the visitor being accepted
+	 */
 	private BenderBindings<A> bindings;
+	
+	/**
+	 * Pending batches of {@link BenderBatch} methods
+	 */
+	private final List<MethodBatch<A>> batches = new ArrayList<>();
 		
 	protected BenderSource(BenderSession session) {
 		if (session == null) {
@@ -49,14 +69,54 @@ public abstract class BenderSource<A extends Annotation> {
 		this.session = session;
 	}
 	
+	/**
+	 * Creates a source sharing the session and the bindings being accepted by the given one, so it can
+	 * traverse part of its target from another thread.
+	 * 
+	 * @param source The source being accepted
+	 */
+	protected BenderSource(BenderSource<A> source) {
+		this.session = source.session;
+		this.bindings = source.bindings;
+	}
+	
 	protected Map<String, MethodBinding<A>> getBindings() {
-		return bindings;
+		return bindings.asMap();
 	}
 	
 	protected MethodBinding<A> getBinding(String key) {
 		return bindings.get(key);
 	}
 	
+	/**
+	 * Gets the current bindings compiled by {@link #compileBindings(Collection)}. The compiled form is cached 
+	 * with the bindings and created again only when new visitor classes are registered.
+	 * 
+	 * @return The compiled bindings
+	 * @throws BenderException
+	 */
+	protected Object getCompiledBindings() throws BenderException {
+		Object compiled = bindings.compiled;
+		if (compiled == null) {
+			bindings.compiled = compiled = compileBindings(bindings.values());
+		}
+		return compiled;
+	}
+	
+	/**
+	 * <p>Compiles all the registered bindings into the structure used by this source to look them up.
+	 * <p>Unlike {@link #getBindings()}, the given collection contains every binding of every registered
+	 * visitor class, even if several of them share the same key. The default implementation returns 
+	 * the bindings map.
+	 * 
+	 * @param bindings The registered bindings in registration order
+	 * @return The compiled bindings
+	 * @throws BenderException
+	 */
+	protected Object compileBindings(Collection<MethodBinding<A>> bindings) throws BenderException {
+		return getBindings();
+	}
+	
 	/**
 	 * Gets the annotation used by this source to define visitor bindings
 	 * 
@@ -71,10 +131,22 @@ public abstract class BenderSource<A extends Annotation> {
 	 * @throws BenderException
 	 */
 	public final void accept(BenderVisitor visitor) throws BenderException {
-		register(visitor.getClass());
+		prepare(visitor);
 		accept0(visitor);
 	}
 	
+	/**
+	 * Selects the bindings of the given visitor, registering its class if needed. Sources that let the 
+	 * caller drive a traversal must call this method before it starts, like {@link #accept(BenderVisitor)} 
+	 * does before calling {@link #accept0(BenderVisitor)}.
+	 * 
+	 * @param visitor The {@link BenderVisitor}
+	 * @throws BenderException
+	 */
+	protected final void prepare(BenderVisitor visitor) throws BenderException {
+		bindings = getBindings(visitor.getClass());
+	}
+	
 	/**
 	 * Method that must be implemented by descendants sources to traverse itself
 	 * 
@@ -83,6 +155,133 @@ public abstract class BenderSource<A extends Annotation> {
 	 */
 	protected abstract void accept0(BenderVisitor visitor) throws BenderException;
 	
+	/**
+	 * Gets the pending batch of a {@link BenderBatch} method for the given visitor, creating it if needed
+	 * 
+	 * @param binding The batched method binding
+	 * @param visitor The visitor instance
+	 * @return The batch
+	 */
+	protected MethodBatch<A> getBatch(MethodBinding<A> binding, Object visitor) {
+		for (int i = batches.size() - 1; i >= 0; i--) {
+			MethodBatch<A> batch = batches.get(i);
+			if (batch.getBinding() == binding && batch.getVisitor() == visitor) {
+				return batch;
+			}
+		}
+		MethodBatch<A> batch = new MethodBatch<A>(binding, visitor);
+		batches.add(batch);
+		return batch;
+	}
+	
+	/**
+	 * Flushes the pending batches of the given visitor in creation order
+	 * 
+	 * @param visitor The visitor instance
+	 * @throws BenderException
+	 */
+	protected void flushBatches(Object visitor) throws BenderException {
+		if (batches.isEmpty()) {
+			return;
+		}
+		for (Iterator<MethodBatch<A>> it = batches.iterator(); it.hasNext();) {
+			MethodBatch<A> batch = it.next();
+			if (batch.getVisitor() == visitor) {
+				it.remove();
+				batch.flush();
+			}
+		}
+	}
+	
+	/**
+	 * Flushes the pending batches of the given visitor and calls its {@link BenderVisitor#visitEnd()} method.
+	 * Sources must end visitors through this method.
+	 * 
+	 * @param visitor The visitor instance
+	 * @throws BenderException
+	 */
+	protected void visitEnd(BenderVisitor visitor) throws BenderException {
+		flushBatches(visitor);
+		visitor.visitEnd();
+	}
+	
+	/**
+	 * <p>Accepts the given visitor in a new virtual thread, or in a new thread if virtual threads are not 
+	 * available in the running JVM.
+	 * <p>Sources are not thread-safe: the source must not be used until the returned future completes.
+	 * 
+	 * @param visitor The {@link BenderVisitor}
+	 * @return The future completed when the traversal ends, or completed with the {@link BenderException}
+	 * thrown by the traversal
+	 * @see #accept(BenderVisitor)
+	 */
+	public CompletableFuture<Void> acceptAsync(BenderVisitor visitor) {
+		return acceptAsync(visitor, AsyncExecutor.INSTANCE);
+	}
+	
+	/**
+	 * <p>Accepts the given visitor in the given executor.
+	 * <p>Sources are not thread-safe: the source must not be used until the returned future completes.
+	 * 
+	 * @param visitor The {@link BenderVisitor}
+	 * @param executor The executor running the traversal
+	 * @return The future completed when the traversal ends, or completed with the {@link BenderException}
+	 * thrown by the traversal
+	 * @see #accept(BenderVisitor)
+	 */
+	public CompletableFuture<Void> acceptAsync(BenderVisitor visitor, Executor executor) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					accept(visitor);
+					future.complete(null);
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+	
+	/**
+	 * Accepts a visitor in each of the given sources, running up to <code>concurrency</code> sources 
+	 * at the same time in virtual threads, or in new threads if virtual threads are not available.
+	 * 
+	 * @param sources The sources to traverse
+	 * @param visitors The function creating the visitor of each source
+	 * @param concurrency The maximum number of sources traversed at the same time
+	 * @return The future completed when all the sources are traversed, or completed with the first 
+	 * exception thrown. No more sources are traversed after an exception.
+	 * @see #acceptAsync(BenderVisitor)
+	 */
+	public static <S extends BenderSource<?>> CompletableFuture<Void> acceptAll(Iterable<S> sources, 
+			Function<? super S, ? extends BenderVisitor> visitors, int concurrency) {
+		return acceptAll(sources, visitors, concurrency, AsyncExecutor.INSTANCE);
+	}
+	
+	/**
+	 * Accepts a visitor in each of the given sources, running up to <code>concurrency</code> sources 
+	 * at the same time in the given executor.
+	 * 
+	 * @param sources The sources to traverse
+	 * @param visitors The function creating the visitor of each source
+	 * @param concurrency The maximum number of sources traversed at the same time
+	 * @param executor The executor running the traversals
+	 * @return The future completed when all the sources are traversed, or completed with the first 
+	 * exception thrown. No more sources are traversed after an exception.
+	 * @see #acceptAsync(BenderVisitor, Executor)
+	 */
+	public static <S extends BenderSource<?>> CompletableFuture<Void> acceptAll(Iterable<S> sources, 
+			Function<? super S, ? extends BenderVisitor> visitors, int concurrency, Executor executor) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive");
+		}
+		return new BulkAccept<S>(sources.iterator(), visitors, executor).start(concurrency);
+	}
+	
 	/**
 	 * <p>Registers a bender visitor to be used by this or any source of the same class.
 	 * <p>If a visitor class is already registered calling this method has no effect. 
@@ -91,26 +290,35 @@ public abstract class BenderSource<A extends Annotation> {
 	 * @param visitorClass The class to register
 	 * @throws BenderException
 	 */
-	@SuppressWarnings("unchecked")
 	public void register(Class<?> visitorClass) throws BenderException {
-		
-		bindings = (BenderBindings<A>) session.getBindings(getClass().getCanonicalName(), visitorClass);
-		if (bindings == null) {
-			bindings = new BenderBindings<A>();
-			session.putBindings(getClass().getCanonicalName(), visitorClass, bindings);
-			createBindings(bindings, visitorClass, getAnnotationClass());
-		}
+		getBindings(visitorClass);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private BenderBindings<A> getBindings(Class<?> visitorClass) throws BenderException {
+		return (BenderBindings<A>) session.getBindings(getClass(), visitorClass, () -> {
+			BenderBindings<A> b = new BenderBindings<A>(visitorClass);
+			createBindings(b, visitorClass, getAnnotationClass());
+			return b;
+		});
 	}
 	
 	/**
-	 * Use to register anonymous classes at runtime
+	 * <p>Use to register anonymous classes at runtime.
+	 * <p>The new bindings are published in the session replacing the ones of the visitor being accepted, 
+	 * so they are created only once.
 	 * 
-	 * @param bindings The visitors bindings
 	 * @param visitorClass The new class to register
 	 * @throws BenderException
 	 */
+	@SuppressWarnings("unchecked")
 	protected void registerAnonymousClass(Class<? extends BenderVisitor> visitorClass) throws BenderException {
-		createBindings(bindings, visitorClass, getAnnotationClass());
+		while (!bindings.visitorClasses.contains(visitorClass)) {
+			BenderBindings<A> b = new BenderBindings<A>(bindings);
+			createBindings(b, visitorClass, getAnnotationClass());
+			bindings = (BenderBindings<A>) session.replaceBindings(getClass(), 
+					bindings.rootClass, bindings, b);
+		}
 	}
 	
 	/**
@@ -122,24 +330,77 @@ public abstract class BenderSource<A extends Annotation> {
 	 */
 	protected abstract String getBindingKey(A annotation) throws BenderException;
 	
+	/**
+	 * <p>Compiles a binding key into the path used by this source to reach the binded target.
+	 * <p>Called once per binding when the visitor is registered, so sources can parse their key 
+	 * grammar here instead of on every visit. The result is available through {@link MethodBinding#getPath()}.
+	 * The default implementation returns the key itself.
+	 * 
+	 * @param key The binding key returned by {@link #getBindingKey(Annotation)}
+	 * @return The compiled path
+	 * @throws BenderException If the key is not valid
+	 */
+	protected Object compileBindingPath(String key) throws BenderException {
+		return key;
+	}
+	
+	/**
+	 * <p>Compiles the annotation of a visitor method parameter into the path used by this source 
+	 * to resolve the parameter value.
+	 * <p>The result is available through {@link ParamBinding#getPath()}. The default implementation
+	 * returns <code>null</code>.
+	 * 
+	 * @param annotation The parameter annotation
+	 * @param type The parameter type
+	 * @return The compiled path
+	 * @throws BenderException If the annotation value is not valid
+	 */
+	protected Object compileParamPath(A annotation, Class<?> type) throws BenderException {
+		return null;
+	}
+	
 	private void createBindings(BenderBindings<A> bindings, Class<?> visitorClass, Class<A> annotationClass) 
 			throws BenderException {
 		
+		bindings.visitorClasses.add(visitorClass);
+		BenderDispatcher dispatcher = getDispatcher(visitorClass);
+		if (dispatcher != null) {
+			// Generated dispatcher: no need to scan visitor methods
+			String annotationName = annotationClass.getName();
+			for (int i = 0; i < dispatcher.size(); i++) {
+				if (annotationName.equals(dispatcher.getAnnotationName(i))) {
+					Method method;
+					try {
+						method = visitorClass.getMethod(dispatcher.getMethodName(i), dispatcher.getParameterTypes(i));
+					} catch (NoSuchMethodException e) {
+						throw new BenderException("Dispatcher out of date for visitor " + visitorClass.getName(), e);
+					}
+					createBindings(bindings, visitorClass, method.getAnnotation(annotationClass), method, dispatcher, i);
+				}
+			}
+			return;
+		}
 		Method[] methods = visitorClass.getMethods();
 		for (Method method : methods) {
 			A annotation = method.getAnnotation(annotationClass);
 			if (annotation != null) {
-				createBindings(bindings, visitorClass, annotation, method);
+				createBindings(bindings, visitorClass, annotation, method, null, -1);
 			}
 		}
 	}
 
-	private void createBindings(BenderBindings<A> bindings, Class<?> visitorClass, A annotation, Method method) throws BenderException {
+	private void createBindings(BenderBindings<A> bindings, Class<?> visitorClass, A annotation, Method method, 
+			BenderDispatcher dispatcher, int index) throws BenderException {
+		if (batched(method)) {
+			checkBatch(method);
+		}
 		Class<?>[] paramTypes = method.getParameterTypes();
 		Annotation[] paramAnnotations = null;
+		Object[] paramPaths = null;
 		if (paramTypes.length > 0) {
 			Annotation[][] allAnnotations = method.getParameterAnnotations();
 			paramAnnotations = new Annotation[paramTypes.length];
+			paramPaths = new Object[paramTypes.length];
 			for (int i = 0; i < paramTypes.length; i++) {
 				for (Annotation a : allAnnotations[i]) {
 					if (a.getClass() == annotation.getClass()) {
@@ -149,18 +410,183 @@ public abstract class BenderSource<A extends Annotation> {
 				if (paramAnnotations[i] == null) {
 					throw new BenderException("Missing annotation in method parameter");
 				}
+				@SuppressWarnings("unchecked")
+				A a = (A) paramAnnotations[i];
+				paramPaths[i] = compileParamPath(a, batched(method) ? paramTypes[i].getComponentType() : paramTypes[i]);
 			}
 		}
-		bindings.put(getBindingKey(annotation), new MethodBinding<A>(method, annotation, paramAnnotations));
+		String key = getBindingKey(annotation);
+		bindings.put(key, new MethodBinding<A>(method, annotation, key, paramAnnotations, 
+				compileBindingPath(key), paramPaths, dispatcher, index));
 		
 		Class<?> returnType = method.getReturnType();
 		if (BenderVisitor.class.isAssignableFrom(returnType) 
 				&& BenderVisitor.class != returnType) { // Anonymous class registered at runtime
-			BenderBindings<?> b = session.getBindings(getClass().getCanonicalName(), returnType);
-			if (b == null) {
+			if (!bindings.visitorClasses.contains(returnType)) {
 				createBindings(bindings, returnType, getAnnotationClass());
 			}
 		}
 	}
 	
+	private static boolean batched(Method method) {
+		return method.isAnnotationPresent(BenderBatch.class);
+	}
+	
+	private static void checkBatch(Method method) throws BenderException {
+		if (method.getAnnotation(BenderBatch.class).value() < 1) {
+			throw new BenderException("Batch size must be positive in method " + method.getName());
+		}
+		if (method.getReturnType() != void.class) {
+			throw new BenderException("Batched method " + method.getName() + " must return void");
+		}
+		if (method.getParameterCount() == 0) {
+			throw new BenderException("Batched method " + method.getName() + " must have parameters");
+		}
+		for (Class<?> type : method.getParameterTypes()) {
+			if (!type.isArray()) {
+				throw new BenderException("Batched method " + method.getName() + " parameters must be arrays");
+			}
+		}
+	}
+	
+	/**
+	 * Gets the generated dispatcher of the given visitor class if it exists
+	 * 
+	 * @param visitorClass The visitor class
+	 * @return The dispatcher or <code>null</code> if the visitor was not processed at compile time
+	 * @throws BenderException
+	 */
+	private static BenderDispatcher getDispatcher(Class<?> visitorClass) throws BenderException {
+		if (visitorClass.isAnonymousClass() || visitorClass.isLocalClass()) {
+			return null;
+		}
+		Class<?> c;
+		try {
+			c = Class.forName(visitorClass.getName() + BenderDispatcher.SUFFIX, true, visitorClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		try {
+			return (BenderDispatcher) c.getDeclaredConstructor().newInstance();
+		} catch (InvocationTargetException e) {
+			throw new BenderException("Cannot create dispatcher for visitor " + visitorClass.getName(), e.getCause());
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw new BenderException("Cannot create dispatcher for visitor " + visitorClass.getName(), e);
+		}
+	}
+	
+	/**
+	 * Default executor of asynchronous traversals
+	 */
+	private static final class AsyncExecutor {
+		
+		static final ExecutorService INSTANCE = create();
+		
+		private static ExecutorService create() {
+			try {
+				// Java 21+
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				return Executors.newCachedThreadPool(r -> {
+					Thread t = new Thread(r, "bender-async");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Traverses a sequence of sources keeping a bounded number of them running. Each completed 
+	 * traversal frees a slot for the next one. Sources are started in a loop by a single thread at a 
+	 * time, so traversals completing in the thread that starts them, like with an executor running 
+	 * tasks in the calling thread, do not nest calls.
+	 */
+	private static final class BulkAccept<S extends BenderSource<?>> {
+		
+		private final Iterator<S> sources;
+		
+		private final Function<? super S, ? extends BenderVisitor> visitors;
+		
+		private final Executor executor;
+		
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+		
+		private int running;
+		
+		/**
+		 * Number of sources that can be started
+		 */
+		private int free;
+		
+		/**
+		 * If a thread is starting sources
+		 */
+		private boolean starting;
+		
+		BulkAccept(Iterator<S> sources, Function<? super S, ? extends BenderVisitor> visitors, Executor executor) {
+			this.sources = sources;
+			this.visitors = visitors;
+			this.executor = executor;
+		}
+		
+		CompletableFuture<Void> start(int concurrency) {
+			synchronized (this) {
+				free = concurrency;
+			}
+			startAll();
+			return result;
+		}
+		
+		private void completed(Throwable e) {
+			if (e != null) {
+				result.completeExceptionally(e);
+			}
+			synchronized (this) {
+				running--;
+				free++;
+			}
+			startAll();
+		}
+		
+		/**
+		 * Starts sources while there are free slots, unless another call is already doing it
+		 */
+		private void startAll() {
+			synchronized (this) {
+				if (starting) {
+					return;
+				}
+				starting = true;
+			}
+			while (true) {
+				S source;
+				synchronized (this) {
+					if (result.isDone() || !sources.hasNext()) {
+						starting = false;
+						if (running == 0) {
+							result.complete(null);
+						}
+						return;
+					} else if (free == 0) {
+						starting = false;
+						return;
+					}
+					source = sources.next();
+					free--;
+					running++;
+				}
+				CompletableFuture<Void> future;
+				try {
+					future = source.acceptAsync(visitors.apply(source), executor);
+				} catch (Throwable e) {
+					// Completes the source, so the result completes even if the visitor cannot be created
+					future = new CompletableFuture<>();
+					future.completeExceptionally(e);
+				}
+				future.whenComplete((r, e) -> completed(e));
+			}
+		}
+	}
+	
 }
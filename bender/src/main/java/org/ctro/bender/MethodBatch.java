@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+
+import org.ctro.bender.MethodBinding.ParamBinding;
+
+/**
+ * <p>Pending matches of a {@link BenderBatch} method binding for one visitor instance.
+ * <p>Sources fill the parameter arrays with {@link #set(int, Object)} and {@link #next()}, and 
+ * the batch is flushed to the visitor when full. See {@link BenderSource#getBatch(MethodBinding, Object)}.
+ * <p>Each parameter array gets an element setter when the batch is created, and <code>int</code>, 
+ * <code>long</code> and <code>double</code> values can be set without boxing.
+ * 
+ * @author Jordi Carretero
+ *
+ * @param <A> The annotation type
+ */
+public final class MethodBatch<A extends Annotation> {
+
+	private final MethodBinding<A> binding;
+	
+	private final Object visitor;
+	
+	private final Object[] columns;
+	
+	private final MethodHandle[] setters;
+	
+	private int size;
+	
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, int.class, Object.class);
+	
+	MethodBatch(MethodBinding<A> binding, Object visitor) {
+		this.binding = binding;
+		this.visitor = visitor;
+		ParamBinding<A>[] paramBindings = binding.getParamBindings();
+		this.columns = new Object[paramBindings.length];
+		this.setters = new MethodHandle[paramBindings.length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = Array.newInstance(paramBindings[i].getType().getComponentType(), binding.getBatchSize());
+			setters[i] = MethodHandles.arrayElementSetter(paramBindings[i].getType()).asType(SETTER);
+		}
+	}
+	
+	/**
+	 * @return the binding
+	 */
+	public MethodBinding<A> getBinding() {
+		return binding;
+	}
+	
+	/**
+	 * @return the visitor
+	 */
+	public Object getVisitor() {
+		return visitor;
+	}
+	
+	/**
+	 * @return the number of collected matches
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Sets a parameter value of the current match
+	 * 
+	 * @param param The parameter index
+	 * @param value The parameter value, unboxed for primitive arrays
+	 */
+	public void set(int param, Object value) {
+		try {
+			setters[param].invokeExact(columns[param], size, value);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Sets an <code>int</code> parameter value of the current match
+	 * 
+	 * @param param The index of an <code>int[]</code> parameter
+	 * @param value The parameter value
+	 */
+	public void set(int param, int value) {
+		((int[]) columns[param])[size] = value;
+	}
+	
+	/**
+	 * Sets a <code>long</code> parameter value of the current match
+	 * 
+	 * @param param The index of a <code>long[]</code> parameter
+	 * @param value The parameter value
+	 */
+	public void set(int param, long value) {
+		((long[]) columns[param])[size] = value;
+	}
+	
+	/**
+	 * Sets a <code>double</code> parameter value of the current match
+	 * 
+	 * @param param The index of a <code>double[]</code> parameter
+	 * @param value The parameter value
+	 */
+	public void set(int param, double value) {
+		((double[]) columns[param])[size] = value;
+	}
+	
+	/**
+	 * Adds a range of array elements as matches of a batch with a single parameter of the same array type.
+	 * The elements are copied in bulk and the batch is flushed when full.
+	 * 
+	 * @param array The source array
+	 * @param offset The first element to add
+	 * @param length The number of elements to add
+	 * @return The number of elements added, up to the free space in the batch
+	 * @throws BenderException
+	 */
+	public int addAll(Object array, int offset, int length) throws BenderException {
+		if (columns.length != 1) {
+			throw new IllegalStateException("Bulk add needs a batch with one parameter");
+		}
+		int n = Math.min(length, binding.getBatchSize() - size);
+		System.arraycopy(array, offset, columns[0], size, n);
+		size += n;
+		if (size == binding.getBatchSize()) {
+			flush();
+		}
+		return n;
+	}
+	
+	/**
+	 * Completes the current match
+	 * 
+	 * @return <code>true</code> if the batch is full and must be flushed
+	 */
+	public boolean next() {
+		return ++size == binding.getBatchSize();
+	}
+	
+	/**
+	 * Calls the visitor method with the collected matches, if any, and empties the batch
+	 * 
+	 * @throws BenderException
+	 */
+	public void flush() throws BenderException {
+		if (size == 0) {
+			return;
+		}
+		Object[] args = columns;
+		if (size < binding.getBatchSize()) {
+			args = new Object[columns.length];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = Array.newInstance(columns[i].getClass().getComponentType(), size);
+				System.arraycopy(columns[i], 0, args[i], 0, size);
+			}
+		}
+		size = 0;
+		try {
+			binding.invoke(visitor, args);
+		} catch (Exception e) {
+			throw new BenderException("Error invoking visitor method " + binding.getMethod().getName(), e);
+		}
+	}
+}
@@ -17,7 +17,12 @@
 package org.ctro.bender;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,17 +40,74 @@ public class MethodBinding<A extends Annotation> {
 
 	private final A annotation;
 	
+	private final String key;
+	
 	private final ParamBinding<A>[] paramBindings;
 	
+	private final Object path;
+	
+	private final BenderDispatcher dispatcher;
+	
+	private final int index;
+	
+	private final int batchSize;
+	
+	/**
+	 * Method handle typed as <code>(Object visitor, Object... params)Object</code> with the exact arity
+	 */
+	private final MethodHandle handle;
+	
+	/**
+	 * Same as {@link #handle} but taking the parameters as an array
+	 */
+	private final MethodHandle spreader;
+	
+	/**
+	 * Handle keeping the primitive parameter types, created when first needed
+	 */
+	private MethodHandle exactHandle;
+	
+	MethodBinding(Method method, A annotation, Annotation[] paramAnnotations) throws BenderException {
+		this(method, annotation, null, paramAnnotations, null, null, null, -1);
+	}
+	
 	@SuppressWarnings("unchecked")
-	MethodBinding(Method method, A annotation, Annotation[] paramAnnotations) {
+	MethodBinding(Method method, A annotation, String key, Annotation[] paramAnnotations, Object path, 
+			Object[] paramPaths, BenderDispatcher dispatcher, int index) throws BenderException {
 		this.method = method;
 		this.annotation = annotation;
+		this.key = key;
+		this.path = path;
+		this.dispatcher = dispatcher;
+		this.index = index;
+		BenderBatch batch = method.getAnnotation(BenderBatch.class);
+		this.batchSize = batch != null ? batch.value() : 0;
+		if (dispatcher == null) {
+			if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+				// Public methods of anonymous or package visitors
+				method.setAccessible(true);
+			}
+			try {
+				MethodHandle h = MethodHandles.lookup().unreflect(method);
+				if (Modifier.isStatic(method.getModifiers())) {
+					h = MethodHandles.dropArguments(h, 0, Object.class);
+				}
+				int arity = method.getParameterCount();
+				this.handle = h.asType(MethodType.genericMethodType(arity + 1));
+				this.spreader = handle.asSpreader(Object[].class, arity);
+			} catch (IllegalAccessException e) {
+				throw new BenderException("Cannot access visitor method " + method.getName(), e);
+			}
+		} else {
+			this.handle = null;
+			this.spreader = null;
+		}
 		int size = paramAnnotations != null ? paramAnnotations.length : 0;
 		ParamBinding<A>[] paramBindings = new ParamBinding[size];
 		Class<?>[] parameterTypes = method.getParameterTypes();
 		for (int i = 0; i < paramBindings.length; i++) {
-			paramBindings[i] = new ParamBinding<A>(parameterTypes[i], (A) paramAnnotations[i]);
+			paramBindings[i] = new ParamBinding<A>(parameterTypes[i], (A) paramAnnotations[i], 
+					paramPaths != null ? paramPaths[i] : null);
 		}
 		this.paramBindings = paramBindings;
 	}
@@ -64,12 +126,184 @@ public class MethodBinding<A extends Annotation> {
 		return annotation;
 	}	
 	
+	/**
+	 * @return the key defined by {@link BenderSource#getBindingKey(Annotation)}
+	 */
+	public String getKey() {
+		return key;
+	}
+	
+	/**
+	 * @return the path compiled by {@link BenderSource#compileBindingPath(String)}
+	 */
+	public Object getPath() {
+		return path;
+	}
+	
 	/**
 	 * @return the paramBindings
 	 */
 	public ParamBinding<A>[] getParamBindings() {
 		return paramBindings;
 	}
+	
+	/**
+	 * @return the maximum number of matches per call of a {@link BenderBatch} method, or 0 if 
+	 * the method is not batched
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Gets a handle of the binded method typed as <code>(Object visitor, P0 ... Pn)Object</code>, where 
+	 * primitive parameter types are kept and reference ones are erased to <code>Object</code>. Sources can 
+	 * compose it with their own parameter readers to pass primitive values without boxing.
+	 * 
+	 * @return The method handle
+	 * @throws BenderException If the method cannot be accessed
+	 */
+	public MethodHandle getExactHandle() throws BenderException {
+		MethodHandle h = exactHandle;
+		if (h == null) {
+			try {
+				if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+					method.setAccessible(true);
+				}
+				h = MethodHandles.lookup().unreflect(method);
+				if (Modifier.isStatic(method.getModifiers())) {
+					h = MethodHandles.dropArguments(h, 0, Object.class);
+				}
+				Class<?>[] types = new Class<?>[method.getParameterCount() + 1];
+				types[0] = Object.class;
+				for (int i = 1; i < types.length; i++) {
+					Class<?> t = h.type().parameterType(i);
+					types[i] = t.isPrimitive() ? t : Object.class;
+				}
+				exactHandle = h = h.asType(MethodType.methodType(Object.class, types));
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw new BenderException("Cannot access visitor method " + method.getName(), e);
+			}
+		}
+		return h;
+	}
+	
+	/**
+	 * Invokes the binded method on the given visitor. If the visitor class has a generated
+	 * {@link BenderDispatcher} the method is called directly, otherwise through a method handle
+	 * created when the binding is registered.
+	 * <p>Methods with up to 3 parameters should be called through the overloads with explicit
+	 * arguments to avoid the arguments array.
+	 * 
+	 * @param visitor The visitor instance
+	 * @param args The method arguments (can be null for methods without parameters)
+	 * @return The method result
+	 * @throws Exception
+	 */
+	public Object invoke(Object visitor, Object[] args) throws Exception {
+		if (args == null) {
+			return invoke(visitor);
+		}
+		try {
+			if (dispatcher != null) {
+				return dispatcher.invoke(visitor, index, args);
+			}
+			return (Object) spreader.invokeExact(visitor, args);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	/**
+	 * Invokes a binded method without parameters.
+	 * 
+	 * @param visitor The visitor instance
+	 * @return The method result
+	 * @throws Exception
+	 * @see #invoke(Object, Object[])
+	 */
+	public Object invoke(Object visitor) throws Exception {
+		try {
+			if (dispatcher != null) {
+				return dispatcher.invoke(visitor, index);
+			}
+			return (Object) handle.invokeExact(visitor);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	/**
+	 * Invokes a binded method with one parameter.
+	 * 
+	 * @param visitor The visitor instance
+	 * @param arg0 The first argument
+	 * @return The method result
+	 * @throws Exception
+	 * @see #invoke(Object, Object[])
+	 */
+	public Object invoke(Object visitor, Object arg0) throws Exception {
+		try {
+			if (dispatcher != null) {
+				return dispatcher.invoke(visitor, index, arg0);
+			}
+			return (Object) handle.invokeExact(visitor, arg0);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	/**
+	 * Invokes a binded method with two parameters.
+	 * 
+	 * @param visitor The visitor instance
+	 * @param arg0 The first argument
+	 * @param arg1 The second argument
+	 * @return The method result
+	 * @throws Exception
+	 * @see #invoke(Object, Object[])
+	 */
+	public Object invoke(Object visitor, Object arg0, Object arg1) throws Exception {
+		try {
+			if (dispatcher != null) {
+				return dispatcher.invoke(visitor, index, arg0, arg1);
+			}
+			return (Object) handle.invokeExact(visitor, arg0, arg1);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	/**
+	 * Invokes a binded method with three parameters.
+	 * 
+	 * @param visitor The visitor instance
+	 * @param arg0 The first argument
+	 * @param arg1 The second argument
+	 * @param arg2 The third argument
+	 * @return The method result
+	 * @throws Exception
+	 * @see #invoke(Object, Object[])
+	 */
+	public Object invoke(Object visitor, Object arg0, Object arg1, Object arg2) throws Exception {
+		try {
+			if (dispatcher != null) {
+				return dispatcher.invoke(visitor, index, arg0, arg1, arg2);
+			}
+			return (Object) handle.invokeExact(visitor, arg0, arg1, arg2);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	private static Exception rethrow(Throwable t) {
+		if (t instanceof Exception) {
+			return (Exception) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new InvocationTargetException(t);
+	}
 
 	/**
 	 * Binding for method parameters.
@@ -84,9 +318,12 @@ public class MethodBinding<A extends Annotation> {
 		
 		private final A annotation;
 		
-		ParamBinding(Class<?> type, A annotation) {
+		private final Object path;
+		
+		ParamBinding(Class<?> type, A annotation, Object path) {
 			this.type = type;
 			this.annotation = annotation;
+			this.path = path;
 		}
 
 		/**
@@ -102,6 +339,12 @@ public class MethodBinding<A extends Annotation> {
 		public A getAnnotation() {
 			return annotation;
 		}
+
+		/**
+		 * @return the path compiled by {@link BenderSource#compileParamPath(Annotation, Class)}
+		 */
+		public Object getPath() {
+			return path;
+		}
 	}
 }
-
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Access to arrays of any component type without {@link java.lang.reflect.Array}.
+ * <p>Each method checks the array type once and then works on the typed array, so the JIT compiles 
+ * plain array accesses instead of reflective calls.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderArrays {
+
+	private BenderArrays() {
+	}
+
+	/**
+	 * @param array The array
+	 * @return The array length
+	 */
+	static int length(Object array) {
+		if (array instanceof Object[]) {
+			return ((Object[]) array).length;
+		} else if (array instanceof int[]) {
+			return ((int[]) array).length;
+		} else if (array instanceof long[]) {
+			return ((long[]) array).length;
+		} else if (array instanceof double[]) {
+			return ((double[]) array).length;
+		} else if (array instanceof byte[]) {
+			return ((byte[]) array).length;
+		} else if (array instanceof float[]) {
+			return ((float[]) array).length;
+		} else if (array instanceof short[]) {
+			return ((short[]) array).length;
+		} else if (array instanceof char[]) {
+			return ((char[]) array).length;
+		} else if (array instanceof boolean[]) {
+			return ((boolean[]) array).length;
+		}
+		throw new IllegalArgumentException("Not an array: " + array.getClass().getName());
+	}
+
+	/**
+	 * Gets an element of the array, boxed if the array is primitive
+	 *
+	 * @param array The array
+	 * @param i The element index
+	 * @return The element
+	 */
+	static Object get(Object array, int i) {
+		if (array instanceof Object[]) {
+			return ((Object[]) array)[i];
+		} else if (array instanceof int[]) {
+			return ((int[]) array)[i];
+		} else if (array instanceof long[]) {
+			return ((long[]) array)[i];
+		} else if (array instanceof double[]) {
+			return ((double[]) array)[i];
+		} else if (array instanceof byte[]) {
+			return ((byte[]) array)[i];
+		} else if (array instanceof float[]) {
+			return ((float[]) array)[i];
+		} else if (array instanceof short[]) {
+			return ((short[]) array)[i];
+		} else if (array instanceof char[]) {
+			return ((char[]) array)[i];
+		} else if (array instanceof boolean[]) {
+			return ((boolean[]) array)[i];
+		}
+		throw new IllegalArgumentException("Not an array: " + array.getClass().getName());
+	}
+
+	/**
+	 * Creates a spliterator over the array elements, boxed if the array is primitive
+	 *
+	 * @param array The array
+	 * @return The spliterator
+	 */
+	static Spliterator<?> spliterator(Object array) {
+		if (array instanceof Object[]) {
+			return Arrays.spliterator((Object[]) array);
+		} else if (array instanceof int[]) {
+			return Arrays.spliterator((int[]) array);
+		} else if (array instanceof long[]) {
+			return Arrays.spliterator((long[]) array);
+		} else if (array instanceof double[]) {
+			return Arrays.spliterator((double[]) array);
+		}
+		return IntStream.range(0, length(array)).mapToObj(i -> get(array, i)).spliterator();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ctro.bender.Bender;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.MethodBinding;
+
+/**
+ * <p>Bindings of a root visitor and its nested visitors grouped by visitor class.
+ * <p>Bean binding keys are relative to the visited bean, so unlike other sources the same key may be
+ * binded by several visitor classes. Only the bindings of methods declared by the visitor class or
+ * its superclasses apply to a visitor, and overridden methods are binded once.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderBeanBindings {
+
+	private final List<MethodBinding<Bender>> bindings;
+
+	private final Map<MethodBinding<Bender>, BenderBeanInvoker> invokers = new IdentityHashMap<>();
+
+	private final ConcurrentMap<Class<?>, BenderBeanPlan> visitorBindings = new ConcurrentHashMap<>();
+
+	BenderBeanBindings(Collection<MethodBinding<Bender>> bindings) throws BenderException {
+		this.bindings = new ArrayList<>(bindings);
+		for (MethodBinding<Bender> binding : bindings) {
+			invokers.put(binding, new BenderBeanInvoker(binding));
+		}
+	}
+
+	/**
+	 * Gets the bindings of the given visitor class
+	 *
+	 * @param visitorClass The visitor class
+	 * @return The evaluation plan of the visitor bindings
+	 */
+	BenderBeanPlan get(Class<?> visitorClass) {
+		BenderBeanPlan b = visitorBindings.get(visitorClass);
+		if (b == null) {
+			b = create(visitorClass);
+			visitorBindings.putIfAbsent(visitorClass, b);
+		}
+		return b;
+	}
+
+	private BenderBeanPlan create(Class<?> visitorClass) {
+		Map<String, MethodBinding<Bender>> methods = new LinkedHashMap<>();
+		for (MethodBinding<Bender> binding : bindings) {
+			Method method = binding.getMethod();
+			Class<?> c = method.getDeclaringClass();
+			if (!c.isAssignableFrom(visitorClass)) {
+				continue;
+			}
+			String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+			MethodBinding<Bender> other = methods.get(signature);
+			if (other == null || other.getMethod().getDeclaringClass().isAssignableFrom(c)) {
+				methods.put(signature, binding);
+			}
+		}
+		List<BenderBeanInvoker> b = new ArrayList<>(methods.size());
+		for (MethodBinding<Bender> binding : methods.values()) {
+			b.add(invokers.get(binding));
+		}
+		return new BenderBeanPlan(b);
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ctro.bender.BenderException;
+
+/**
+ * <p>Property accessors of a bean class shared by all {@link BenderBean} instances.
+ * <p>Fields and reader methods of the class hierarchy are resolved once per class and made
+ * accessible the first time they are used. Instances are thread-safe and live as long as the
+ * bean class.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderBeanClass {
+
+	private static final ClassValue<BenderBeanClass> CLASSES = new ClassValue<BenderBeanClass>() {
+		@Override
+		protected BenderBeanClass computeValue(Class<?> type) {
+			return new BenderBeanClass(type);
+		}
+	};
+
+	private final Class<?> type;
+
+	private final Map<String, Field> fields;
+
+	private final Map<String, Method> methods;
+
+	private final ConcurrentMap<String, Field> accessibleFields = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Method> accessibleMethods = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, BenderBeanPath.Accessor> fieldAccessors = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, BenderBeanPath.Accessor> methodAccessors = new ConcurrentHashMap<>();
+
+	private BenderBeanClass(Class<?> type) {
+		this.type = type;
+		Map<String, Field> fields = new HashMap<>();
+		Map<String, Method> methods = new HashMap<>();
+		// Members of subclasses hide the superclass ones
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			if (c != Object.class) {
+				for (Field field : c.getDeclaredFields()) {
+					if (!fields.containsKey(field.getName())) {
+						fields.put(field.getName(), field);
+					}
+				}
+			}
+			for (Method method : c.getDeclaredMethods()) {
+				if (isReader(method) && !methods.containsKey(method.getName())) {
+					methods.put(method.getName(), method);
+				}
+			}
+		}
+		this.fields = Collections.unmodifiableMap(fields);
+		this.methods = Collections.unmodifiableMap(methods);
+	}
+
+	/**
+	 * Gets the accessors of the given class
+	 *
+	 * @param c The bean class
+	 * @return The class accessors
+	 */
+	static BenderBeanClass of(Class<?> c) {
+		return CLASSES.get(c);
+	}
+
+	/**
+	 * Gets the accessible field with the given name
+	 *
+	 * @param name The field name
+	 * @return The field
+	 * @throws BenderException If the field does not exist or cannot be accessed
+	 */
+	Field getField(String name) throws BenderException {
+		Field field = accessibleFields.get(name);
+		if (field == null) {
+			field = fields.get(name);
+			if (field == null) {
+				throw new BenderException("Cannot find field " + name);
+			}
+			try {
+				field.setAccessible(true);
+			} catch (RuntimeException e) {
+				throw new BenderException("Cannot access field " + name, e);
+			}
+			accessibleFields.put(name, field);
+		}
+		return field;
+	}
+
+	/**
+	 * Gets the accessible reader method with the given name. Methods of classes that cannot be made 
+	 * accessible, like the JDK collection internals, are read through a public supertype declaring them.
+	 *
+	 * @param name The method name
+	 * @return The method
+	 * @throws BenderException If the method does not exist or cannot be accessed
+	 */
+	Method getMethod(String name) throws BenderException {
+		Method method = accessibleMethods.get(name);
+		if (method == null) {
+			method = methods.get(name);
+			if (method == null) {
+				throw new BenderException("Cannot find reader method for property " + name);
+			}
+			try {
+				method.setAccessible(true);
+			} catch (RuntimeException e) {
+				Method m = getPublicMethod(type, name);
+				if (m == null) {
+					throw new BenderException("Cannot access reader method for property " + name, e);
+				}
+				method = m;
+			}
+			accessibleMethods.put(name, method);
+		}
+		return method;
+	}
+
+	/**
+	 * Gets a handle reading a property of this class, typed as <code>(Object)T</code> where <code>T</code> 
+	 * is the declared type of the property
+	 *
+	 * @param name The field or method name
+	 * @param method <code>true</code> for a reader method
+	 * @return The handle
+	 * @throws BenderException If the property does not exist or cannot be accessed
+	 */
+	MethodHandle getReader(String name, boolean method) throws BenderException {
+		try {
+			MethodHandle h;
+			Class<?> t;
+			if (method) {
+				Method m = getMethod(name);
+				h = MethodHandles.lookup().unreflect(m);
+				t = m.getReturnType();
+			} else {
+				Field f = getField(name);
+				h = MethodHandles.lookup().unreflectGetter(f);
+				t = f.getType();
+			}
+			return h.asType(MethodType.methodType(t, Object.class));
+		} catch (IllegalAccessException e) {
+			throw new BenderException("Cannot access property " + name, e);
+		}
+	}
+
+	/**
+	 * Gets the accessor of a property of this class, shared by all the paths reading it
+	 *
+	 * @param name The field or method name
+	 * @param method <code>true</code> for a reader method
+	 * @return The accessor
+	 * @throws BenderException If the property does not exist or cannot be accessed
+	 */
+	BenderBeanPath.Accessor getAccessor(String name, boolean method) throws BenderException {
+		ConcurrentMap<String, BenderBeanPath.Accessor> accessors = method ? methodAccessors : fieldAccessors;
+		BenderBeanPath.Accessor accessor = accessors.get(name);
+		if (accessor == null) {
+			accessor = new BenderBeanPath.Accessor(type, name, method, getReader(name, method));
+			BenderBeanPath.Accessor other = accessors.putIfAbsent(name, accessor);
+			if (other != null) {
+				accessor = other;
+			}
+		}
+		return accessor;
+	}
+
+	/**
+	 * Reads a field of the given bean
+	 *
+	 * @param bean The bean instance of this class
+	 * @param name The field name
+	 * @return The field value
+	 * @throws BenderException
+	 */
+	Object getFieldValue(Object bean, String name) throws BenderException {
+		Field field = getField(name);
+		try {
+			return field.get(bean);
+		} catch (Exception e) {
+			throw new BenderException("Error reading field " + name, e);
+		}
+	}
+
+	/**
+	 * Invokes a reader method of the given bean
+	 *
+	 * @param bean The bean instance of this class
+	 * @param name The method name
+	 * @return The method result
+	 * @throws BenderException
+	 */
+	Object invokeMethod(Object bean, String name) throws BenderException {
+		Method method = getMethod(name);
+		try {
+			return method.invoke(bean);
+		} catch (Exception e) {
+			throw new BenderException("Error invoking method " + name, e);
+		}
+	}
+
+	private static Method getPublicMethod(Class<?> c, String name) {
+		if (Modifier.isPublic(c.getModifiers())) {
+			try {
+				Method m = c.getMethod(name);
+				if (Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+					return m;
+				}
+			} catch (NoSuchMethodException e) {
+				// Not declared by this type
+			}
+		}
+		for (Class<?> i : c.getInterfaces()) {
+			Method m = getPublicMethod(i, name);
+			if (m != null) {
+				return m;
+			}
+		}
+		return c.getSuperclass() != null ? getPublicMethod(c.getSuperclass(), name) : null;
+	}
+
+	private static boolean isReader(Method method) {
+		if (method.getParameterCount() != 0 || method.isBridge() || Modifier.isStatic(method.getModifiers())) {
+			return false;
+		}
+		String n = method.getName();
+		int length = n.length();
+		return (n.startsWith("get") && length > 3)
+				|| (n.startsWith("is") && length > 2 && Character.isUpperCase(n.charAt(2)));
+	}
+}
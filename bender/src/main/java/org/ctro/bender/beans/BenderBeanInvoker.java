@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import org.ctro.bender.Bender;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderPredicate;
+import org.ctro.bender.MethodBinding;
+import org.ctro.bender.MethodBinding.ParamBinding;
+
+/**
+ * <p>Invoker of a visitor method binding on a bean.
+ * <p>Methods with primitive parameters are called through a method handle that reads the parameters 
+ * from the bean and passes them to the visitor method with its exact signature, so primitive values 
+ * are never boxed. Handles are created once per bean class and kept by the invoker, so elements of mixed 
+ * classes do not rebuild them and bean classes do not reference visitor classes. Only methods whose parameters are properties of the target itself are specialized, other methods 
+ * are called through {@link MethodBinding}.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderBeanInvoker {
+
+	private static final MethodHandle RESOLVE;
+
+	static {
+		try {
+			RESOLVE = MethodHandles.lookup().findVirtual(BenderBeanPath.class, "resolve", 
+					MethodType.methodType(Object.class, Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final MethodBinding<Bender> binding;
+
+	private final BenderPredicate filter;
+
+	/**
+	 * Visitor method typed as <code>(Object visitor, P0 ... Pn)Object</code>, keeping primitive parameters,
+	 * or <code>null</code> if the method is not specialized
+	 */
+	private final MethodHandle method;
+
+	/**
+	 * Invokers of the bean classes visited, replaced by a copy when a class is added
+	 */
+	private volatile Cache[] caches = new Cache[0];
+
+	/**
+	 * Invoker of the last bean class visited. Caches are immutable, so invokers shared by several 
+	 * threads can replace them without synchronization.
+	 */
+	private Cache cache;
+
+	/**
+	 * Element invoker of the last primitive array type iterated
+	 */
+	private Cache elementCache;
+
+	BenderBeanInvoker(MethodBinding<Bender> binding) throws BenderException {
+		this.binding = binding;
+		this.filter = ((BenderBeanPath) binding.getPath()).getFilter();
+		this.method = isSpecialized(binding) ? binding.getExactHandle() : null;
+	}
+
+	/**
+	 * @return the binding
+	 */
+	MethodBinding<Bender> getBinding() {
+		return binding;
+	}
+
+	/**
+	 * @return The filter of the iterated elements or <code>null</code>
+	 */
+	BenderPredicate getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return <code>true</code> if the binding has primitive parameters read without boxing
+	 */
+	boolean isSpecialized() {
+		return method != null;
+	}
+
+	/**
+	 * Invokes a specialized binding reading its parameters from the given bean
+	 *
+	 * @param visitor The visitor instance
+	 * @param bean The bean targeted by the binding (not null)
+	 * @return The method result
+	 * @throws Exception
+	 */
+	Object invoke(Object visitor, Object bean) throws Exception {
+		Cache c = cache;
+		Class<?> type = bean.getClass();
+		if (c == null || c.type != type) {
+			cache = c = getCache(type);
+		}
+		try {
+			return (Object) c.handle.invokeExact(visitor, bean);
+		} catch (Throwable t) {
+			if (t instanceof Exception) {
+				throw (Exception) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	private Cache getCache(Class<?> type) throws BenderException {
+		Cache[] cs = caches;
+		for (Cache c : cs) {
+			if (c.type == type) {
+				return c;
+			}
+		}
+		Cache c = new Cache(type, create(type));
+		synchronized (this) {
+			cs = caches;
+			for (Cache other : cs) {
+				if (other.type == type) {
+					return other;
+				}
+			}
+			cs = Arrays.copyOf(cs, cs.length + 1);
+			cs[cs.length - 1] = c;
+			caches = cs;
+		}
+		return c;
+	}
+
+	/**
+	 * <p>Gets a handle invoking the binding on primitive array elements without boxing them, typed as 
+	 * <code>(Object visitor, C element)Object</code> where <code>C</code> is the array component type.
+	 * <p>Only unfiltered bindings whose parameters all target the element itself (<code>this</code>) have 
+	 * element handles.
+	 *
+	 * @param componentType The primitive component type
+	 * @return The handle or <code>null</code> if elements must be boxed
+	 */
+	MethodHandle getElementHandle(Class<?> componentType) throws BenderException {
+		Cache c = elementCache;
+		if (c == null || c.type != componentType) {
+			elementCache = c = new Cache(componentType, createElement(componentType));
+		}
+		return c.handle;
+	}
+
+	/**
+	 * Checks if the binding takes slices of arrays of the given type: unfiltered batched methods with a 
+	 * single <code>this</code> parameter of the same array type.
+	 *
+	 * @param arrayType The iterated array type
+	 * @return <code>true</code> if array ranges can be copied to the batch in bulk
+	 */
+	boolean isSlice(Class<?> arrayType) {
+		ParamBinding<Bender>[] params = binding.getParamBindings();
+		return filter == null && binding.getBatchSize() > 0 && params.length == 1 && params[0].getType() == arrayType
+				&& ((BenderBeanPath) params[0].getPath()).isThis();
+	}
+
+	private MethodHandle createElement(Class<?> componentType) throws BenderException {
+		ParamBinding<Bender>[] params = binding.getParamBindings();
+		if (filter != null || binding.getBatchSize() > 0 || params.length == 0) {
+			return null;
+		}
+		for (ParamBinding<Bender> param : params) {
+			if (!((BenderBeanPath) param.getPath()).isThis()) {
+				return null;
+			}
+		}
+		MethodHandle h = binding.getExactHandle();
+		Class<?>[] types = new Class<?>[params.length + 1];
+		int[] reorder = new int[params.length + 1];
+		types[0] = Object.class;
+		for (int i = 1; i < types.length; i++) {
+			types[i] = componentType;
+			reorder[i] = 1;
+		}
+		try {
+			h = h.asType(MethodType.methodType(Object.class, types));
+		} catch (WrongMethodTypeException e) {
+			return null;
+		}
+		return MethodHandles.permuteArguments(h, MethodType.methodType(Object.class, Object.class, componentType), reorder);
+	}
+
+	/**
+	 * Creates the handle <code>(Object visitor, Object bean)Object</code> for the given bean class
+	 */
+	private MethodHandle create(Class<?> type) throws BenderException {
+		ParamBinding<Bender>[] params = binding.getParamBindings();
+		MethodHandle[] getters = new MethodHandle[params.length];
+		int[] reorder = new int[params.length + 1];
+		for (int i = 0; i < params.length; i++) {
+			getters[i] = getter((BenderBeanPath) params[i].getPath(), type, method.type().parameterType(i + 1));
+			reorder[i + 1] = 1;
+		}
+		MethodHandle h = MethodHandles.filterArguments(method, 1, getters);
+		return MethodHandles.permuteArguments(h, MethodType.genericMethodType(2), reorder);
+	}
+
+	private static MethodHandle getter(BenderBeanPath path, Class<?> type, Class<?> paramType) throws BenderException {
+		MethodHandle getter = path.getter(type);
+		if (getter != null) {
+			try {
+				return getter.asType(MethodType.methodType(paramType, Object.class));
+			} catch (WrongMethodTypeException e) {
+				// Not convertible without boxing, fails when called as other bindings
+			}
+		}
+		return RESOLVE.bindTo(path).asType(MethodType.methodType(paramType, Object.class));
+	}
+
+	private static boolean isSpecialized(MethodBinding<Bender> binding) {
+		if (binding.getBatchSize() > 0) {
+			return false;
+		}
+		boolean primitive = false;
+		for (ParamBinding<Bender> param : binding.getParamBindings()) {
+			if (((BenderBeanPath) param.getPath()).getSegments().length > 1) {
+				// Nested properties are shared with other bindings by BenderBeanPlan
+				return false;
+			}
+			primitive |= param.getType().isPrimitive();
+		}
+		return primitive;
+	}
+
+	private static final class Cache {
+
+		final Class<?> type;
+
+		final MethodHandle handle;
+
+		Cache(Class<?> type, MethodHandle handle) {
+			this.type = type;
+			this.handle = handle;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ctro.bender.Bender;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderPredicate;
+
+/**
+ * <p>Compiled form of a {@link Bender} key.
+ * <p>Keys are parsed once when a visitor is registered into a sequence of property segments, so
+ * traversing a bean does not need any string processing. The key grammar is:
+ *
+ * <pre>
+ * key      := ["this" "."] segment ("." segment)* ["[" [predicate] "]"]
+ * segment  := field | method
+ * field    := name
+ * method   := name "()"</pre>
+ *
+ * <p>The <code>this</code> key targets the bean itself and the <code>[]</code> suffix, only allowed
+ * at the end of the key, iterates over the target array, {@link Iterable}, iterator, stream, optional
+ * or map entries. A {@link BenderPredicate} between the brackets filters the elements, with references
+ * being keys relative to each element, like <code>this.orders[status == 'OPEN' &amp;&amp; total &gt; 100]</code>.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderBeanPath {
+
+	private final String key;
+
+	private final Segment[] segments;
+
+	private final boolean iterable;
+
+	private final BenderPredicate filter;
+
+	private BenderBeanPath(String key, Segment[] segments, boolean iterable, BenderPredicate filter) {
+		this.key = key;
+		this.segments = segments;
+		this.iterable = iterable;
+		this.filter = filter;
+	}
+
+	/**
+	 * Compiles the given key
+	 *
+	 * @param key The binding key
+	 * @param iterable If the <code>[]</code> suffix is allowed
+	 * @return The compiled path
+	 * @throws BenderException If the key is not valid
+	 */
+	static BenderBeanPath compile(String key, boolean iterable) throws BenderException {
+		if (key == null) {
+			throw new BenderException("Null binding key");
+		}
+		String path = key.trim();
+		boolean iterate = false;
+		BenderPredicate filter = null;
+		int bracket = path.indexOf('[');
+		if (bracket >= 0) {
+			if (!iterable) {
+				throw new BenderException("'[]' not allowed in key " + key);
+			} else if (!path.endsWith("]")) {
+				throw new BenderException("'[]' only allowed at the end of key " + key);
+			}
+			String predicate = path.substring(bracket + 1, path.length() - 1).trim();
+			if (!predicate.isEmpty()) {
+				filter = BenderPredicate.compile(predicate, reference -> {
+					BenderBeanPath p = compile(reference, false);
+					return p::resolve;
+				});
+			}
+			iterate = true;
+			path = path.substring(0, bracket);
+		}
+		String[] names = path.split("\\.", -1);
+		List<Segment> segments = new ArrayList<>(names.length);
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			if (i == 0 && "this".equals(name)) {
+				continue;
+			}
+			boolean method = name.endsWith("()");
+			if (method) {
+				name = name.substring(0, name.length() - 2);
+			}
+			if (name.isEmpty()) {
+				throw new BenderException("Empty property name in key " + key);
+			}
+			segments.add(new Segment(name, method));
+		}
+		return new BenderBeanPath(key, segments.toArray(new Segment[segments.size()]), iterate, filter);
+	}
+
+	/**
+	 * @return The source key
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return <code>true</code> if the target must be iterated
+	 */
+	boolean isIterable() {
+		return iterable;
+	}
+
+	/**
+	 * @return The filter of the iterated elements or <code>null</code>
+	 */
+	BenderPredicate getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return The property segments
+	 */
+	Segment[] getSegments() {
+		return segments;
+	}
+
+	/**
+	 * @return <code>true</code> if the path targets the bean itself
+	 */
+	boolean isThis() {
+		return segments.length == 0 && !iterable;
+	}
+
+	/**
+	 * Resolves the path target from the given bean
+	 *
+	 * @param bean The root bean
+	 * @return The target value
+	 * @throws BenderException
+	 */
+	Object resolve(Object bean) throws BenderException {
+		Object value = bean;
+		for (int i = 0; i < segments.length; i++) {
+			Segment segment = segments[i];
+			if (value == null) {
+				throw new BenderException("Cannot read property " + segment.name + " of null in key " + key);
+			}
+			value = segment.get(value);
+		}
+		return value;
+	}
+
+	/**
+	 * Gets a handle reading this path from beans of the given class, typed as <code>(Object)T</code> 
+	 * where <code>T</code> is the declared type of the target property, so primitive properties are 
+	 * not boxed.
+	 *
+	 * @param type The bean class
+	 * @return The handle or <code>null</code> if the path has more than one segment
+	 * @throws BenderException If the property does not exist
+	 */
+	MethodHandle getter(Class<?> type) throws BenderException {
+		if (segments.length == 0) {
+			return MethodHandles.identity(Object.class);
+		} else if (segments.length > 1) {
+			return null;
+		}
+		return BenderBeanClass.of(type).getReader(segments[0].name, segments[0].method);
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+
+	/**
+	 * Property segment of a path
+	 */
+	static final class Segment {
+
+		final String name;
+
+		final boolean method;
+
+		/**
+		 * Accessor of the last bean class read, taken from the accessors cached by the class. Accessors 
+		 * are immutable, so segments shared by several threads can replace them without synchronization.
+		 */
+		private Accessor accessor;
+
+		Segment(String name, boolean method) {
+			this.name = name;
+			this.method = method;
+		}
+
+		Object get(Object bean) throws BenderException {
+			return getAccessor(bean).get(bean);
+		}
+
+		/**
+		 * Gets the accessor reading this segment from the given bean
+		 *
+		 * @param bean The bean
+		 * @return The accessor of the bean class
+		 * @throws BenderException If the property does not exist or cannot be accessed
+		 */
+		Accessor getAccessor(Object bean) throws BenderException {
+			Accessor a = accessor;
+			if (a == null || a.type != bean.getClass()) {
+				accessor = a = BenderBeanClass.of(bean.getClass()).getAccessor(name, method);
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * Field or reader method of a bean class, read through a handle typed as <code>(Object)Object</code>
+	 */
+	static final class Accessor {
+
+		final Class<?> type;
+
+		private final String name;
+
+		private final boolean method;
+
+		private final MethodHandle handle;
+
+		Accessor(Class<?> type, String name, boolean method, MethodHandle reader) {
+			this.type = type;
+			this.name = name;
+			this.method = method;
+			this.handle = reader.asType(MethodType.methodType(Object.class, Object.class));
+		}
+
+		Object get(Object bean) throws BenderException {
+			try {
+				return (Object) handle.invokeExact(bean);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new BenderException((method ? "Error invoking method " : "Error reading field ") + name, t);
+			}
+		}
+	}
+}
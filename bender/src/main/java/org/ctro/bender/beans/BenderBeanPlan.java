@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.BaseStream;
+
+import org.ctro.bender.Bender;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.MethodBinding.ParamBinding;
+import org.ctro.bender.beans.BenderBeanPath.Segment;
+
+/**
+ * <p>Evaluation plan of the bindings of a visitor class.
+ * <p>Binding keys and the parameter keys relative to them are merged into a tree of properties, so each 
+ * distinct property path is read at most once per visited bean and shared by every binding and parameter 
+ * below it. Property values are kept in a frame array indexed by tree node and resolved when first needed,
+ * and bindings are invoked in registration order. Streams, iterators and spliterators can only be 
+ * traversed once, so they are not kept in the frame and are read again by every binding using them.
+ * <p>Parameters of iterated bindings are relative to each element, and parameters of methods called 
+ * through a specialized {@link BenderBeanInvoker} are read by the invoker, so only their targets are shared.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderBeanPlan {
+
+	/**
+	 * Frame value of properties not read yet
+	 */
+	static final Object UNRESOLVED = new Object();
+
+	private final Node[] nodes;
+
+	private final Step[] steps;
+
+	BenderBeanPlan(List<BenderBeanInvoker> invokers) {
+		List<Node> nodes = new ArrayList<>();
+		Map<String, Integer> ids = new HashMap<>();
+		nodes.add(new Node(-1, null, "this"));
+		Step[] steps = new Step[invokers.size()];
+		for (int i = 0; i < steps.length; i++) {
+			BenderBeanInvoker invoker = invokers.get(i);
+			BenderBeanPath path = (BenderBeanPath) invoker.getBinding().getPath();
+			int target = add(nodes, ids, 0, path);
+			int[] params = null;
+			ParamBinding<Bender>[] paramBindings = invoker.getBinding().getParamBindings();
+			if (!path.isIterable() && !invoker.isSpecialized() && paramBindings.length > 0) {
+				params = new int[paramBindings.length];
+				for (int j = 0; j < params.length; j++) {
+					params[j] = add(nodes, ids, target, (BenderBeanPath) paramBindings[j].getPath());
+				}
+			}
+			steps[i] = new Step(invoker, target, path.isIterable(), params);
+		}
+		this.nodes = nodes.toArray(new Node[nodes.size()]);
+		this.steps = steps;
+	}
+
+	private static int add(List<Node> nodes, Map<String, Integer> ids, int parent, BenderBeanPath path) {
+		int node = parent;
+		for (Segment segment : path.getSegments()) {
+			String key = nodes.get(node).key + "." + segment.name + (segment.method ? "()" : "");
+			Integer id = ids.get(key);
+			if (id == null) {
+				id = nodes.size();
+				nodes.add(new Node(node, new Segment(segment.name, segment.method), key));
+				ids.put(key, id);
+			}
+			node = id;
+		}
+		return node;
+	}
+
+	/**
+	 * @return The number of frame values, one per tree node. Value 0 is the bean itself.
+	 */
+	int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return The bindings in registration order
+	 */
+	Step[] getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Gets the value of a tree node, reading it and its unresolved ancestors from the frame bean
+	 *
+	 * @param values The frame values
+	 * @param node The node index
+	 * @return The property value
+	 * @throws BenderException
+	 */
+	Object value(Object[] values, int node) throws BenderException {
+		Object value = values[node];
+		if (value == UNRESOLVED) {
+			Node n = nodes[node];
+			Object bean = value(values, n.parent);
+			if (bean == null) {
+				throw new BenderException("Cannot read property " + n.segment.name + " of null in key " + n.key);
+			}
+			value = n.segment.get(bean);
+			if (!(value instanceof BaseStream || value instanceof Iterator || value instanceof Spliterator)) {
+				values[node] = value;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Binding of the plan
+	 */
+	static final class Step {
+
+		final BenderBeanInvoker invoker;
+
+		final int target;
+
+		final boolean iterable;
+
+		/**
+		 * Nodes of the parameter values, or <code>null</code> if parameters are resolved from the target
+		 */
+		final int[] params;
+
+		Step(BenderBeanInvoker invoker, int target, boolean iterable, int[] params) {
+			this.invoker = invoker;
+			this.target = target;
+			this.iterable = iterable;
+			this.params = params;
+		}
+	}
+
+	private static final class Node {
+
+		final int parent;
+
+		final Segment segment;
+
+		final String key;
+
+		Node(int parent, Segment segment, String key) {
+			this.parent = parent;
+			this.segment = segment;
+			this.key = key;
+		}
+	}
+}
@@ -16,18 +16,35 @@
  */
 package org.ctro.bender.beans;
 
-import java.lang.reflect.Array;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
-import java.util.Map.Entry;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.RandomAccess;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.ctro.bender.Bender;
+import org.ctro.bender.BenderControl;
 import org.ctro.bender.BenderException;
+import org.ctro.bender.BenderParallelVisitor;
+import org.ctro.bender.BenderPredicate;
+import org.ctro.bender.BenderReferenceVisitor;
+import org.ctro.bender.BenderRemovalVisitor;
 import org.ctro.bender.BenderSession;
 import org.ctro.bender.BenderSource;
 import org.ctro.bender.BenderVisitor;
+import org.ctro.bender.MethodBatch;
 import org.ctro.bender.MethodBinding;
 import org.ctro.bender.MethodBinding.ParamBinding;
+import org.ctro.bender.beans.BenderBeanPlan.Step;
 
 /**
  * <p>Bender source to apply visitors to java objects.
@@ -41,6 +58,9 @@ import org.ctro.bender.MethodBinding.ParamBinding;
  * this.propertyName.nestedPropertyName</code>), parameters can be binded only to first level members of
  * bean targeted by the method annotation.
  * <p>Visitor methods can return other {@link BenderVisitor} that takes the method binded object as target.
+ * Arrays, {@link Iterable}, {@link Iterator}, {@link Spliterator}, {@link java.util.stream.Stream}, 
+ * {@link java.util.Optional} and {@link java.util.Map} targets are iterated lazily: each element accepts the 
+ * returned visitor (map values) or is passed to the method binded with the <code>[]</code> suffix (map entries).
  * <br/>See this sample visitor:
  * 
  *  <pre>{@code public class MyBeanVisitor implements BenderVisitor {
@@ -69,6 +89,16 @@ import org.ctro.bender.MethodBinding.ParamBinding;
  *BenderBeanSource source = new BenderBeanSource(session, myBean);
  *source.accept(myBeanVisitor);}</pre>
  *
+ * <p>Visitor methods can also return a {@link BenderControl} to skip the rest of the bean being visited 
+ * or to stop the traversal.
+ *
+ * <p>Large iterable targets can be traversed in parallel by visitors implementing
+ * {@link BenderParallelVisitor}, see {@link #setParallel(ForkJoinPool, int)}.
+ *
+ * <p>Graphs with cycles or shared beans can be traversed visiting each bean once, see 
+ * {@link #setVisitOnce(boolean)}, and graphs traversed again and again can be visited by changes, see 
+ * {@link #setDelta(boolean)}.
+ *
  * @author Jordi Carretero
  *
  * @see Bender
@@ -76,11 +106,48 @@ import org.ctro.bender.MethodBinding.ParamBinding;
  */
 public class BenderBeanSource extends BenderSource<Bender> {
 	
+	private static final int INITIAL_DEPTH = 16;
+	
 	private Object source;
 	
-	private Stack<BenderBean> beans = new Stack<>();
+	/*
+	 * Visitor stack: one frame per bean being visited
+	 */
+	private BenderVisitor[] visitors = new BenderVisitor[INITIAL_DEPTH];
+	
+	private Frame[] frames = new Frame[INITIAL_DEPTH];
+	
+	private int depth;
+	
+	/**
+	 * Reusable arguments arrays by arity, for methods with more than 3 parameters
+	 */
+	private Object[][] params = new Object[0][];
+	
+	private ForkJoinPool pool;
+	
+	private int threshold;
+	
+	/**
+	 * Source that started the traversal
+	 */
+	private final BenderBeanSource root;
+	
+	private volatile boolean terminated;
 	
-	private Stack<BenderVisitor> visitors = new Stack<>();
+	private boolean visitOnce;
+	
+	/**
+	 * Beans visited by nested visitors in visit-once mode, shared by all the chunk sources
+	 */
+	private BenderVisitedSet visited;
+	
+	/**
+	 * Parameter fingerprints kept between traversals in delta mode
+	 */
+	private BenderFingerprints fingerprints;
+	
+	private int traversal;
 
 	/**
 	 * Creates a new source instance.
@@ -94,6 +161,70 @@ public class BenderBeanSource extends BenderSource<Bender> {
 	public BenderBeanSource(BenderSession session, Object bean) {
 		super(session);
 		this.source = bean;
+		this.root = this;
+	}
+	
+	/**
+	 * Creates a source to traverse one chunk of a parallel traversal
+	 */
+	private BenderBeanSource(BenderBeanSource source) {
+		super(source);
+		this.pool = source.pool;
+		this.threshold = source.threshold;
+		this.visitOnce = source.visitOnce;
+		this.root = source.root;
+	}
+	
+	/**
+	 * <p>Enables the parallel traversal of iterable targets with at least 
+	 * <code>threshold</code> elements.
+	 * <p>Targets are split in chunks of about <code>threshold</code> elements visited in the given pool. 
+	 * Only targets visited by a {@link BenderParallelVisitor} are split: each chunk is visited by a 
+	 * forked visitor that is merged back before the traversal goes on.
+	 * 
+	 * @param pool The pool running the chunks or <code>null</code> to traverse sequentially
+	 * @param threshold The minimum number of elements to split a target
+	 */
+	public void setParallel(ForkJoinPool pool, int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive");
+		}
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * <p>Enables visiting each bean once per visitor class.
+	 * <p>Beans are tracked by identity: when a nested visitor reaches a bean already visited by a visitor
+	 * of the same class, the bean is not traversed again, so graphs with cycles do not recurse forever and 
+	 * shared beans are visited once. Visitors implementing {@link BenderReferenceVisitor} are notified of 
+	 * each skipped bean. Disabled by default.
+	 * 
+	 * @param visitOnce <code>true</code> to visit each bean once
+	 */
+	public void setVisitOnce(boolean visitOnce) {
+		this.visitOnce = visitOnce;
+	}
+	
+	/**
+	 * <p>Enables visiting only the changes of the bean graph since the previous traversal of this source.
+	 * <p>In delta mode the source keeps a fingerprint of the parameter values passed to each <code>void</code> 
+	 * visitor method for each bean, and calls the method again only when the bean is new or the values changed. 
+	 * Fingerprints are computed from the {@link Object#hashCode()} of the values, so bind the properties 
+	 * that change rather than mutable beans with identity hash codes. Methods returning a value, like nested 
+	 * visitors, are always called, and elements that are not beans, like numbers, strings or enums, are not 
+	 * tracked.
+	 * <p>At the end of each complete traversal, a root visitor implementing {@link BenderRemovalVisitor} is 
+	 * notified of the beans reached by the previous traversals but not by this one.
+	 * 
+	 * @param delta <code>true</code> to visit changes only, <code>false</code> to forget the fingerprints
+	 */
+	public void setDelta(boolean delta) {
+		if (!delta) {
+			fingerprints = null;
+		} else if (fingerprints == null) {
+			fingerprints = new BenderFingerprints();
+		}
 	}
 	
 	@Override
@@ -104,132 +235,632 @@ public class BenderBeanSource extends BenderSource<Bender> {
 	@Override
 	protected String getBindingKey(Bender annotation) throws BenderException {
 		String key = annotation.value();
-		// TODO validate key: '[]' only at the end
 		return key;
 	}
+	
+	@Override
+	protected Object compileBindings(Collection<MethodBinding<Bender>> bindings) throws BenderException {
+		return new BenderBeanBindings(bindings);
+	}
+	
+	@Override
+	protected Object compileBindingPath(String key) throws BenderException {
+		return BenderBeanPath.compile(key, true);
+	}
+	
+	@Override
+	protected Object compileParamPath(Bender annotation, Class<?> type) throws BenderException {
+		return BenderBeanPath.compile(annotation.value(), false);
+	}
 
 	@Override
 	protected void accept0(BenderVisitor visitor) throws BenderException {
-		accept0(source, visitor);
-		visitor.visitEnd();
+		terminated = false;
+		depth = 0;
+		if (visitOnce) {
+			visited = new BenderVisitedSet();
+			visited.add(source, visitor.getClass());
+		}
+		traversal++;
+		try {
+			accept0(source, visitor);
+		} finally {
+			visited = null;
+		}
+		if (fingerprints != null && !terminated) {
+			fingerprints.sweep(traversal, visitor instanceof BenderRemovalVisitor 
+					? (bean, binding) -> ((BenderRemovalVisitor) visitor).visitRemoved(bean, binding.getMethod()) : null);
+		}
+		visitEnd(visitor);
 	}
 	
-	private void accept0(Object bean, BenderVisitor visitor) throws BenderException {
-		beans.push(new BenderBean(bean));
-		visitors.push(visitor);
-		
-		for (Entry<String, MethodBinding<Bender>> entry : getBindings().entrySet()) {
-			boolean iterate = false;
-			BenderBean b = beans.peek().copy();
-			
-			String[] keys = entry.getKey().split("\\.");
-			for (int i = 0; i < keys.length; i++) {
-				String key = keys[i];
-				if (key == null) {
-					throw new BenderException("Null property name in " + entry.getKey());
-				}
-				if (i == 0 && "this".equals(key)) {
-					continue;
-				}
-				if (key.endsWith("[]")) {
-					iterate = true;
-					if (key.endsWith("()[]")) {
-						b.setBean(b.invokeMethod(key.substring(0, key.length() - 4)));
-					} else {
-						b.setBean(b.getFieldValue(key.substring(0, key.length() - 2)));
-					}
-				} else {
-					if (key.endsWith("()")) {
-						b.setBean(b.invokeMethod(key.substring(0, key.length() - 2)));
-					} else {
-						b.setBean(b.getFieldValue(key));
-					}
-				}
+	/**
+	 * Visits a bean reached by a nested visitor, unless it was already visited in visit-once mode
+	 */
+	private void acceptOnce(Object bean, BenderVisitor visitor) throws BenderException {
+		if (visitOnce && bean != null && !root.markVisited(bean, visitor)) {
+			if (visitor instanceof BenderReferenceVisitor) {
+				((BenderReferenceVisitor) visitor).visitReference(bean);
 			}
-			if (iterate) {
-				invokeIterable(entry.getValue(), b.getBean());
-			} else {
-				invoke(entry.getValue(), b);
+			return;
+		}
+		accept0(bean, visitor);
+	}
+	
+	private boolean markVisited(Object bean, BenderVisitor visitor) {
+		if (pool == null) {
+			return visited.add(bean, visitor.getClass());
+		}
+		synchronized (visited) {
+			return visited.add(bean, visitor.getClass());
+		}
+	}
+	
+	private void accept0(Object bean, BenderVisitor visitor) throws BenderException {
+		Frame frame = push(visitor);
+		BenderBeanPlan plan = ((BenderBeanBindings) getCompiledBindings()).get(visitor.getClass());
+		frame.enter(plan, bean);
+		Step[] steps = plan.getSteps();
+		for (int i = 0; i < steps.length; i++) {
+			Step step = steps[i];
+			Object target = frame.value(step.target);
+			boolean next = step.iterable ? invokeIterable(step.invoker, target) 
+					: invoke(step.invoker, target, frame, step.params);
+			if (!next) {
+				break;
 			}
 		}
-		visitors.pop();
-		beans.pop();
+		frame.exit();
+		visitors[--depth] = null;
+	}
+	
+	private Frame push(BenderVisitor visitor) {
+		if (depth == visitors.length) {
+			visitors = Arrays.copyOf(visitors, depth * 2);
+			frames = Arrays.copyOf(frames, depth * 2);
+		}
+		Frame frame = frames[depth];
+		if (frame == null) {
+			frames[depth] = frame = new Frame();
+		}
+		visitors[depth++] = visitor;
+		return frame;
+	}
+	
+	/**
+	 * Invokes a binding on an iterated element, if it matches the binding filter
+	 * 
+	 * @return <code>false</code> if the rest of the current bean must be skipped
+	 */
+	private boolean invoke(BenderBeanInvoker invoker, Object bean) throws BenderException {
+		BenderPredicate filter = invoker.getFilter();
+		if (filter != null && !filter.test(bean)) {
+			return true;
+		}
+		return invoke(invoker, bean, null, null);
 	}
 	
-	private void invoke(MethodBinding<Bender> binding, BenderBean bean) throws BenderException {
-		Object[] params = null;
+	/**
+	 * Invokes a binding on the given target
+	 * 
+	 * @param frame The frame of the visited bean
+	 * @param params The frame nodes of the parameter values or <code>null</code> to resolve them from the target 
+	 * @return <code>false</code> if the rest of the current bean must be skipped
+	 */
+	private boolean invoke(BenderBeanInvoker invoker, Object bean, Frame frame, int[] params) throws BenderException {
+		MethodBinding<Bender> binding = invoker.getBinding();
 		ParamBinding<Bender>[] paramBindings = binding.getParamBindings();
-		if (paramBindings.length != 0) {
-			params = new Object[paramBindings.length];
-			for (int i = 0; i < params.length; i++) {
-				String key = paramBindings[i].getAnnotation().value();
-				if (key.startsWith("this.")) {
-					key = key.substring(5);
-				}
-				if (key.endsWith("()")) {
-					params[i] = bean.invokeMethod(key.substring(0, key.length() - 2));
-				} else {
-					params[i] = bean.getFieldValue(key);
-				}
+		Method method = binding.getMethod();
+		if (root.fingerprints != null && method.getReturnType() == void.class && isBean(bean)) {
+			return invokeDelta(binding, bean, frame, params);
+		}
+		if (binding.getBatchSize() > 0) {
+			MethodBatch<Bender> batch = getBatch(binding, visitors[depth - 1]);
+			for (int i = 0; i < paramBindings.length; i++) {
+				batch.set(i, getParam(paramBindings, i, bean, frame, params));
+			}
+			if (batch.next()) {
+				batch.flush();
 			}
+			return true;
 		}
-		Method method = binding.getMethod();
 		try {
-			Object visitor = visitors.peek();
-			Object v = method.invoke(visitor, params);
-			if (v != null && v instanceof BenderVisitor) {
-				if (v.getClass().isAnonymousClass()) {
-					@SuppressWarnings("unchecked")
-					Class<? extends BenderVisitor> c = (Class<? extends BenderVisitor>) v.getClass();
-					registerAnonymousClass(c);
-				}
-				acceptNested(bean.getBean(), (BenderVisitor) v);
+			Object visitor = visitors[depth - 1];
+			Object v;
+			if (invoker.isSpecialized() && bean != null) {
+				// Primitive parameters without boxing
+				v = invoker.invoke(visitor, bean);
+			} else {
+				v = invoke(binding, visitor, bean, frame, params);
 			}
+			return next(v, bean);
 		} catch (Exception e) {
 			throw new BenderException("Error invoking visitor method " + method.getName(), e);
 		}
 	}
 	
-	private void invokeIterable(MethodBinding<Bender> binding, Object bean) throws BenderException {
+	/**
+	 * Invokes a <code>void</code> binding in delta mode, only if its parameter values changed since the 
+	 * previous traversal
+	 * 
+	 * @return <code>false</code> if the rest of the current bean must be skipped
+	 */
+	private boolean invokeDelta(MethodBinding<Bender> binding, Object bean, Frame frame, int[] params) 
+			throws BenderException {
+		ParamBinding<Bender>[] p = binding.getParamBindings();
+		Object[] args = getParams(p.length);
+		try {
+			long fingerprint = 1;
+			for (int i = 0; i < args.length; i++) {
+				args[i] = getParam(p, i, bean, frame, params);
+				fingerprint = fingerprint * 0x9E3779B97F4A7C15L + Objects.hashCode(args[i]);
+			}
+			if (!root.updateFingerprint(bean, binding, fingerprint)) {
+				return !root.terminated;
+			}
+			Object visitor = visitors[depth - 1];
+			if (binding.getBatchSize() > 0) {
+				MethodBatch<Bender> batch = getBatch(binding, visitor);
+				for (int i = 0; i < args.length; i++) {
+					batch.set(i, args[i]);
+				}
+				if (batch.next()) {
+					batch.flush();
+				}
+				return true;
+			}
+			binding.invoke(visitor, args);
+		} catch (BenderException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new BenderException("Error invoking visitor method " + binding.getMethod().getName(), e);
+		} finally {
+			Arrays.fill(args, null);
+		}
+		return !root.terminated;
+	}
+	
+	private boolean updateFingerprint(Object bean, MethodBinding<Bender> binding, long fingerprint) {
+		if (pool == null) {
+			return fingerprints.update(bean, binding, fingerprint, traversal);
+		}
+		synchronized (fingerprints) {
+			return fingerprints.update(bean, binding, fingerprint, traversal);
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the value is a bean tracked by identity in delta mode
+	 */
+	private static boolean isBean(Object value) {
+		return value != null && !(value instanceof Number || value instanceof CharSequence 
+				|| value instanceof Boolean || value instanceof Character || value instanceof Enum);
+	}
+	
+	/**
+	 * Handles the result of a visitor method
+	 * 
+	 * @param v The method result
+	 * @param bean The method target
+	 * @return <code>false</code> if the rest of the current bean must be skipped
+	 */
+	private boolean next(Object v, Object bean) throws BenderException {
+		if (v instanceof BenderControl) {
+			if (v == BenderControl.TERMINATE) {
+				root.terminated = true;
+			}
+			return v == BenderControl.CONTINUE;
+		}
+		if (v != null && v instanceof BenderVisitor) {
+			if (v.getClass().isAnonymousClass()) {
+				@SuppressWarnings("unchecked")
+				Class<? extends BenderVisitor> c = (Class<? extends BenderVisitor>) v.getClass();
+				registerAnonymousClass(c);
+			}
+			acceptNested(bean, (BenderVisitor) v);
+		}
+		return !root.terminated;
+	}
+	
+	private Object invoke(MethodBinding<Bender> binding, Object visitor, Object bean, Frame frame, int[] params) 
+			throws Exception {
+		ParamBinding<Bender>[] p = binding.getParamBindings();
+		switch (p.length) {
+		case 0:
+			return binding.invoke(visitor);
+		case 1:
+			return binding.invoke(visitor, getParam(p, 0, bean, frame, params));
+		case 2:
+			return binding.invoke(visitor, getParam(p, 0, bean, frame, params), getParam(p, 1, bean, frame, params));
+		case 3:
+			return binding.invoke(visitor, getParam(p, 0, bean, frame, params), getParam(p, 1, bean, frame, params), 
+					getParam(p, 2, bean, frame, params));
+		default:
+			Object[] args = getParams(p.length);
+			for (int i = 0; i < args.length; i++) {
+				args[i] = getParam(p, i, bean, frame, params);
+			}
+			try {
+				return binding.invoke(visitor, args);
+			} finally {
+				Arrays.fill(args, null);
+			}
+		}
+	}
+	
+	private Object getParam(ParamBinding<Bender>[] paramBindings, int i, Object bean, Frame frame, int[] params) 
+			throws BenderException {
+		if (params != null) {
+			return frame.value(params[i]);
+		}
+		return ((BenderBeanPath) paramBindings[i].getPath()).resolve(bean);
+	}
+	
+	/**
+	 * Gets the reusable arguments array of the given arity. Arrays are only used during the visitor 
+	 * method call, so one array per arity is enough.
+	 */
+	private Object[] getParams(int arity) {
+		if (arity >= params.length) {
+			params = Arrays.copyOf(params, arity + 1);
+		}
+		Object[] args = params[arity];
+		if (args == null) {
+			params[arity] = args = new Object[arity];
+		}
+		return args;
+	}
+	
+	/**
+	 * Invokes a binding on each element of the given target
+	 * 
+	 * @return <code>false</code> if the rest of the current bean must be skipped
+	 */
+	private boolean invokeIterable(BenderBeanInvoker binding, Object bean) throws BenderException {
+		BenderVisitor visitor = visitors[depth - 1];
+		Spliterator<?> elements = null;
+		if (isParallel(visitor)) {
+			elements = BenderElements.spliterator(bean, true);
+			if (elements.estimateSize() >= threshold) {
+				try {
+					return invokeParallel((BenderParallelVisitor<?>) visitor, binding, elements);
+				} finally {
+					BenderElements.close(bean);
+				}
+			}
+		}
 		Class<?> c = bean.getClass();
-		if (c.isArray()) {
-			for (int i = 0; i < Array.getLength(bean); i++) {
-				invoke(binding, new BenderBean(Array.get(bean, i)));
+		if (bean instanceof Object[]) {
+			Object[] a = (Object[]) bean;
+			for (int i = 0; i < a.length; i++) {
+				if (!invoke(binding, a[i])) {
+					return false;
+				}
 			}
-		} else if (Iterable.class.isAssignableFrom(c)) {
-			for (Object b : (Iterable<?>) bean) {
-				invoke(binding, new BenderBean(b));
+		} else if (c.isArray()) {
+			return invokePrimitives(binding, bean);
+		} else if (bean instanceof List && bean instanceof RandomAccess) {
+			// Indexed access does not allocate an iterator
+			List<?> list = (List<?>) bean;
+			for (int i = 0; i < list.size(); i++) {
+				if (!invoke(binding, list.get(i))) {
+					return false;
+				}
 			}
 		} else {
-			throw new BenderException("Cannot iterate over " + c.getCanonicalName());
+			// Lazy elements, the spliterator may have consumed the target
+			Iterator<?> it = elements != null ? Spliterators.iterator(elements) : BenderElements.iterator(bean, true);
+			try {
+				while (it.hasNext()) {
+					if (!invoke(binding, it.next())) {
+						return false;
+					}
+				}
+			} finally {
+				BenderElements.close(bean);
+			}
 		}
+		return true;
+	}
+	
+	/**
+	 * Invokes a binding on each element of a primitive array. Elements are passed without boxing when all 
+	 * the method parameters target the element, and copied in bulk to batched methods taking array slices.
+	 * 
+	 * @return <code>false</code> if the rest of the current bean must be skipped
+	 */
+	private boolean invokePrimitives(BenderBeanInvoker invoker, Object array) throws BenderException {
+		MethodBinding<Bender> binding = invoker.getBinding();
+		int length = BenderArrays.length(array);
+		if (invoker.isSlice(array.getClass())) {
+			MethodBatch<Bender> batch = getBatch(binding, visitors[depth - 1]);
+			for (int i = 0; i < length;) {
+				i += batch.addAll(array, i, length - i);
+			}
+			return true;
+		}
+		MethodHandle h = invoker.getElementHandle(array.getClass().getComponentType());
+		if (h == null) {
+			for (int i = 0; i < length; i++) {
+				if (!invoke(invoker, BenderArrays.get(array, i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		Object visitor = visitors[depth - 1];
+		try {
+			if (array instanceof int[]) {
+				int[] a = (int[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else if (array instanceof long[]) {
+				long[] a = (long[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else if (array instanceof double[]) {
+				double[] a = (double[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else if (array instanceof byte[]) {
+				byte[] a = (byte[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else if (array instanceof float[]) {
+				float[] a = (float[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else if (array instanceof short[]) {
+				short[] a = (short[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else if (array instanceof char[]) {
+				char[] a = (char[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			} else {
+				boolean[] a = (boolean[]) array;
+				for (int i = 0; i < a.length; i++) {
+					Object v = (Object) h.invokeExact(visitor, a[i]);
+					if (v != null && !next(v, a[i])) {
+						return false;
+					}
+				}
+			}
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new BenderException("Error invoking visitor method " + binding.getMethod().getName(), t);
+		}
+		return true;
 	}
 	
 	private void acceptNested(Object bean, BenderVisitor visitor) throws BenderException {
 		Class<?> c = bean.getClass();
+		Spliterator<?> elements = null;
+		if (isParallel(visitor) && BenderElements.isIterable(bean)) {
+			elements = BenderElements.spliterator(bean, false);
+			if (elements.estimateSize() >= threshold) {
+				try {
+					invokeParallel((BenderParallelVisitor<?>) visitor, null, elements);
+				} finally {
+					BenderElements.close(bean);
+				}
+				visitEnd(visitor);
+				return;
+			}
+		}
 		if (c.isArray()) {
 			// Array
-			int length = Array.getLength(bean);
-			for (int i = 0; i < length; i++) {
-				accept0(Array.get(bean, i), visitor);
+			int length = BenderArrays.length(bean);
+			for (int i = 0; i < length && !root.terminated; i++) {
+				acceptOnce(BenderArrays.get(bean, i), visitor);
 			}
 			if (length > 0) {
-				visitor.visitEnd();
+				visitEnd(visitor);
+			}
+		} else if (bean instanceof List && bean instanceof RandomAccess) {
+			// Indexed list
+			List<?> list = (List<?>) bean;
+			int size = list.size();
+			for (int i = 0; i < size && !root.terminated; i++) {
+				acceptOnce(list.get(i), visitor);
 			}
-		} else if (Iterable.class.isAssignableFrom(c)) {
-			// Iterable
+			if (size > 0) {
+				visitEnd(visitor);
+			}
+		} else if (BenderElements.isIterable(bean)) {
+			// Iterable, iterator, stream or map values
+			Iterator<?> it = elements != null ? Spliterators.iterator(elements) : BenderElements.iterator(bean, false);
 			boolean visited = false;
-			for (Object b : (Iterable<?>) bean) {
-				accept0(b, visitor);
-				visited = true;
+			try {
+				while (it.hasNext()) {
+					acceptOnce(it.next(), visitor);
+					visited = true;
+					if (root.terminated) {
+						break;
+					}
+				}
+			} finally {
+				BenderElements.close(bean);
 			}
 			if (visited) {
-				visitor.visitEnd();
+				visitEnd(visitor);
 			}
 		} else {
 			// Bean
-			accept0(bean, visitor);
-			visitor.visitEnd();
+			acceptOnce(bean, visitor);
+			visitEnd(visitor);
+		}
+	}
+
+	private boolean isParallel(BenderVisitor visitor) {
+		return pool != null && visitor instanceof BenderParallelVisitor;
+	}
+	
+	/**
+	 * Visits the given elements in chunks and merges the chunk visitors into the given one
+	 * 
+	 * @param visitor The parallel visitor
+	 * @param binding The invoker called for each element or <code>null</code> if each element accepts the visitor
+	 * @param elements The elements to visit
+	 * @return <code>false</code> if a chunk skipped the rest of the current bean. Other chunks stop as soon 
+	 * as possible, but they may have visited elements after the skipped one.
+	 * @throws BenderException
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private boolean invokeParallel(BenderParallelVisitor<?> visitor, BenderBeanInvoker binding, 
+			Spliterator<?> elements) throws BenderException {
+		List<BenderParallelVisitor<?>> chunks;
+		AtomicBoolean stop = new AtomicBoolean();
+		try {
+			chunks = pool.invoke(new ChunkTask(visitor, binding, elements, stop));
+		} catch (RuntimeException e) {
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof BenderException) {
+					throw (BenderException) t;
+				}
+			}
+			throw e;
+		}
+		for (BenderParallelVisitor chunk : chunks) {
+			((BenderParallelVisitor) visitor).merge(chunk);
+		}
+		return !stop.get() && !root.terminated;
+	}
+	
+	/**
+	 * Splits the elements while they are above the threshold and visits the last chunk in the current thread. 
+	 * Returns the chunk visitors in encounter order.
+	 */
+	private class ChunkTask extends RecursiveTask<List<BenderParallelVisitor<?>>> {
+		
+		private static final long serialVersionUID = 1L;
+
+		private final BenderParallelVisitor<?> visitor;
+		
+		private final BenderBeanInvoker binding;
+		
+		private final Spliterator<?> elements;
+		
+		/**
+		 * Set when a chunk skips the rest of the bean
+		 */
+		private final AtomicBoolean stop;
+		
+		ChunkTask(BenderParallelVisitor<?> visitor, BenderBeanInvoker binding, Spliterator<?> elements, 
+				AtomicBoolean stop) {
+			this.visitor = visitor;
+			this.binding = binding;
+			this.elements = elements;
+			this.stop = stop;
+		}
+
+		@Override
+		protected List<BenderParallelVisitor<?>> compute() {
+			List<ChunkTask> forks = new ArrayList<>();
+			Spliterator<?> prefix;
+			while (elements.estimateSize() > threshold && (prefix = elements.trySplit()) != null) {
+				ChunkTask task = new ChunkTask(visitor, binding, prefix, stop);
+				task.fork();
+				forks.add(task);
+			}
+			BenderParallelVisitor<?> chunk = visitor.fork();
+			try {
+				visit(chunk);
+			} catch (BenderException e) {
+				throw new ChunkException(e);
+			}
+			List<BenderParallelVisitor<?>> chunks = new ArrayList<>();
+			for (ChunkTask task : forks) {
+				chunks.addAll(task.join());
+			}
+			chunks.add(chunk);
+			return chunks;
+		}
+		
+		private void visit(BenderParallelVisitor<?> chunk) throws BenderException {
+			BenderBeanSource source = new BenderBeanSource(BenderBeanSource.this);
+			Iterator<?> it = Spliterators.iterator(elements);
+			if (binding != null) {
+				source.push(chunk);
+				while (it.hasNext() && !stop.get() && !root.terminated) {
+					if (!source.invoke(binding, it.next())) {
+						stop.set(true);
+					}
+				}
+			} else {
+				while (it.hasNext() && !root.terminated) {
+					source.acceptOnce(it.next(), chunk);
+				}
+			}
+			source.flushBatches(chunk);
+		}
+	}
+	
+	private static class ChunkException extends RuntimeException {
+		
+		private static final long serialVersionUID = 1L;
+
+		ChunkException(BenderException cause) {
+			super(cause);
+		}
+	}
+
+	/**
+	 * Property values of the bean being visited at one depth, reused by all the beans visited at that depth
+	 */
+	private static final class Frame {
+		
+		private BenderBeanPlan plan;
+		
+		private Object[] values = new Object[INITIAL_DEPTH];
+		
+		void enter(BenderBeanPlan plan, Object bean) {
+			int size = plan.size();
+			if (size > values.length) {
+				values = new Object[size];
+			}
+			this.plan = plan;
+			values[0] = bean;
+			Arrays.fill(values, 1, size, BenderBeanPlan.UNRESOLVED);
+		}
+		
+		Object value(int node) throws BenderException {
+			return plan.value(values, node);
+		}
+		
+		void exit() {
+			Arrays.fill(values, 0, plan.size(), null);
+			plan = null;
 		}
 	}
 
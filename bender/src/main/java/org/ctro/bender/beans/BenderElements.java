@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
+
+import org.ctro.bender.BenderException;
+
+/**
+ * <p>Lazy access to the elements of the targets a visitor can iterate over.
+ * <p>Besides arrays and {@link Iterable} instances, elements are read from {@link Iterator},
+ * {@link Spliterator}, {@link BaseStream} and {@link Optional} targets as they are visited, so they are
+ * never copied into a collection. {@link Map} targets are iterated over their entries or their values.
+ * Iterators, spliterators and streams can only be consumed once, and streams are closed when they
+ * have been visited.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderElements {
+
+	private BenderElements() {
+	}
+
+	/**
+	 * @param target The target value
+	 * @return <code>true</code> if the target elements can be iterated
+	 */
+	static boolean isIterable(Object target) {
+		return target.getClass().isArray() || target instanceof Iterable || target instanceof Iterator
+				|| target instanceof Spliterator || target instanceof BaseStream || target instanceof Map
+				|| target instanceof Optional;
+	}
+
+	/**
+	 * Gets an iterator over the target elements
+	 *
+	 * @param target The target value
+	 * @param entries <code>true</code> to iterate over the entries of a map, <code>false</code> for its values
+	 * @return The iterator
+	 * @throws BenderException If the target cannot be iterated
+	 */
+	static Iterator<?> iterator(Object target, boolean entries) throws BenderException {
+		if (target instanceof Iterable) {
+			return ((Iterable<?>) target).iterator();
+		} else if (target instanceof Iterator) {
+			return (Iterator<?>) target;
+		} else if (target instanceof Spliterator) {
+			return Spliterators.iterator((Spliterator<?>) target);
+		} else if (target instanceof BaseStream) {
+			return ((BaseStream<?, ?>) target).iterator();
+		} else if (target instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) target;
+			return entries ? map.entrySet().iterator() : map.values().iterator();
+		} else if (target instanceof Optional) {
+			Optional<?> o = (Optional<?>) target;
+			return o.isPresent() ? Collections.singleton(o.get()).iterator() : Collections.emptyIterator();
+		} else if (target.getClass().isArray()) {
+			return Spliterators.iterator(BenderArrays.spliterator(target));
+		}
+		throw new BenderException("Cannot iterate over " + target.getClass().getCanonicalName());
+	}
+
+	/**
+	 * Gets a spliterator over the target elements
+	 *
+	 * @param target The target value
+	 * @param entries <code>true</code> to split the entries of a map, <code>false</code> its values
+	 * @return The spliterator
+	 * @throws BenderException If the target cannot be iterated
+	 */
+	static Spliterator<?> spliterator(Object target, boolean entries) throws BenderException {
+		if (target.getClass().isArray()) {
+			return BenderArrays.spliterator(target);
+		} else if (target instanceof Iterable) {
+			return ((Iterable<?>) target).spliterator();
+		} else if (target instanceof Spliterator) {
+			return (Spliterator<?>) target;
+		} else if (target instanceof BaseStream) {
+			return ((BaseStream<?, ?>) target).spliterator();
+		} else if (target instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) target;
+			return entries ? map.entrySet().spliterator() : map.values().spliterator();
+		}
+		return Spliterators.spliteratorUnknownSize(iterator(target, entries), Spliterator.ORDERED);
+	}
+
+	/**
+	 * Releases the resources of a visited target
+	 *
+	 * @param target The target value
+	 */
+	static void close(Object target) {
+		if (target instanceof BaseStream) {
+			((BaseStream<?, ?>) target).close();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import org.ctro.bender.Bender;
+import org.ctro.bender.BenderException;
+import org.ctro.bender.MethodBinding;
+
+/**
+ * <p>Fingerprints of the parameter values passed to each binding for each bean, kept between traversals.
+ * <p>Like {@link BenderVisitedSet}, entries are bean and binding pairs in a {@link BenderIdentityTable},
+ * with the fingerprint and the traversal that last reached the pair in parallel primitive arrays indexed
+ * by slot, so updating an entry does not allocate. Entries not reached by a traversal are removed by
+ * {@link #sweep(int, Remover)}.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderFingerprints {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Receives the entries removed by a sweep
+	 */
+	interface Remover {
+
+		void removed(Object bean, MethodBinding<Bender> binding) throws BenderException;
+	}
+
+	/**
+	 * Bean and binding pairs
+	 */
+	private final BenderIdentityTable table = new BenderIdentityTable(INITIAL_CAPACITY);
+
+	private long[] fingerprints = new long[INITIAL_CAPACITY];
+
+	private int[] traversals = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Updates the fingerprint of a bean and binding pair
+	 *
+	 * @param bean The bean
+	 * @param binding The binding
+	 * @param fingerprint The fingerprint of the parameter values
+	 * @param traversal The current traversal
+	 * @return <code>true</code> if the pair is new or its fingerprint changed
+	 */
+	boolean update(Object bean, MethodBinding<Bender> binding, long fingerprint, int traversal) {
+		int slot = table.add(bean, binding);
+		if (slot >= 0) {
+			traversals[slot] = traversal;
+			if (fingerprints[slot] == fingerprint) {
+				return false;
+			}
+			fingerprints[slot] = fingerprint;
+			return true;
+		}
+		slot = ~slot;
+		fingerprints[slot] = fingerprint;
+		traversals[slot] = traversal;
+		if (table.isFull()) {
+			rehash(table.capacity() * 2, null);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the pairs not reached by the given traversal
+	 *
+	 * @param traversal The current traversal
+	 * @param remover The receiver of the removed pairs or <code>null</code>
+	 * @throws BenderException
+	 */
+	@SuppressWarnings("unchecked")
+	void sweep(int traversal, Remover remover) throws BenderException {
+		boolean[] removed = null;
+		for (int i = 0; i < traversals.length; i++) {
+			if (table.first(i) != null && traversals[i] != traversal) {
+				if (removed == null) {
+					removed = new boolean[traversals.length];
+				}
+				removed[i] = true;
+				if (remover != null) {
+					remover.removed(table.first(i), (MethodBinding<Bender>) table.second(i));
+				}
+			}
+		}
+		if (removed != null) {
+			rehash(table.capacity(), removed);
+		}
+	}
+
+	/**
+	 * @return The number of bean and binding pairs
+	 */
+	int size() {
+		return table.size();
+	}
+
+	/**
+	 * Copies the entries to a table with the given number of slots
+	 *
+	 * @param removed The slots of the entries not reached by the traversal, or <code>null</code>
+	 */
+	private void rehash(int capacity, boolean[] removed) {
+		int[] slots = table.rehash(capacity, removed);
+		long[] f = new long[capacity];
+		int[] t = new int[capacity];
+		for (int j = 0; j < slots.length; j++) {
+			if (slots[j] >= 0) {
+				f[slots[j]] = fingerprints[j];
+				t[slots[j]] = traversals[j];
+			}
+		}
+		fingerprints = f;
+		traversals = t;
+	}
+}
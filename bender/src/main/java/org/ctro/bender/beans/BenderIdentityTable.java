@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+import java.util.Arrays;
+
+/**
+ * <p>Open addressing table of object pairs compared by identity, with linear probing.
+ * <p>Pairs are stored in a single array, the first object at even indexes followed by the second one, so 
+ * adding a pair does not allocate. Users keep the values of each pair in parallel arrays indexed by slot, 
+ * and move them with the slots returned by {@link #rehash(int, boolean[])}. The table should be kept at 
+ * most half full.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderIdentityTable {
+
+	private Object[] keys;
+
+	private int size;
+
+	/**
+	 * @param capacity The number of slots, a power of two
+	 */
+	BenderIdentityTable(int capacity) {
+		this.keys = new Object[capacity * 2];
+	}
+
+	/**
+	 * Finds the slot of a pair, adding the pair if it is not in the table
+	 *
+	 * @param first The first object
+	 * @param second The second object
+	 * @return The slot of the pair, or its bitwise complement if the pair was added
+	 */
+	int add(Object first, Object second) {
+		Object[] k = keys;
+		int mask = k.length - 2;
+		int i = index(first, second, mask);
+		for (Object o; (o = k[i]) != null; i = (i + 2) & mask) {
+			if (o == first && k[i + 1] == second) {
+				return i >> 1;
+			}
+		}
+		k[i] = first;
+		k[i + 1] = second;
+		size++;
+		return ~(i >> 1);
+	}
+
+	/**
+	 * @return <code>true</code> if more than half of the slots are used
+	 */
+	boolean isFull() {
+		return size * 4 > keys.length;
+	}
+
+	/**
+	 * @return The number of pairs
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of slots
+	 */
+	int capacity() {
+		return keys.length / 2;
+	}
+
+	/**
+	 * @return The first object of the pair in a slot, or <code>null</code> if the slot is empty
+	 */
+	Object first(int slot) {
+		return keys[slot * 2];
+	}
+
+	/**
+	 * @return The second object of the pair in a slot
+	 */
+	Object second(int slot) {
+		return keys[slot * 2 + 1];
+	}
+
+	/**
+	 * Copies the pairs to a table with the given number of slots
+	 *
+	 * @param capacity The new number of slots, a power of two
+	 * @param removed The slots of the pairs to drop, or <code>null</code> to keep them all
+	 * @return The new slot of each old slot, or -1 for empty and dropped slots
+	 */
+	int[] rehash(int capacity, boolean[] removed) {
+		Object[] old = keys;
+		Object[] k = new Object[capacity * 2];
+		int[] slots = new int[old.length / 2];
+		Arrays.fill(slots, -1);
+		int mask = k.length - 2;
+		size = 0;
+		for (int j = 0; j < old.length; j += 2) {
+			Object first = old[j];
+			if (first != null && (removed == null || !removed[j >> 1])) {
+				int i = index(first, old[j + 1], mask);
+				while (k[i] != null) {
+					i = (i + 2) & mask;
+				}
+				k[i] = first;
+				k[i + 1] = old[j + 1];
+				slots[j >> 1] = i >> 1;
+				size++;
+			}
+		}
+		keys = k;
+		return slots;
+	}
+
+	private static int index(Object first, Object second, int mask) {
+		int h = System.identityHashCode(first) * 31 + System.identityHashCode(second);
+		// Spread the bits and keep the index even
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return (h << 1) & mask;
+	}
+}
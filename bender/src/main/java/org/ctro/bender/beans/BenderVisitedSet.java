@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Jordi Carretero
+ * 
+ * This file is part of Bender.
+ * 
+ * Bender is free software: you can redistribute it and/or modify it under the terms of the GNU 
+ * General Public License as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * Bender is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without 
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Bender. If not, 
+ * see http://www.gnu.org/licenses/.
+ */
+package org.ctro.bender.beans;
+
+/**
+ * <p>Identity set of the beans already visited by each visitor class.
+ * <p>Entries are stored as bean and visitor class pairs in a {@link BenderIdentityTable}, so adding a bean 
+ * does not allocate and the whole set takes two references per slot. The table is kept at most half full 
+ * and doubles its size when needed.
+ *
+ * @author Jordi Carretero
+ *
+ */
+final class BenderVisitedSet {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final BenderIdentityTable table = new BenderIdentityTable(INITIAL_CAPACITY);
+
+	/**
+	 * Adds a bean visited by a visitor class
+	 *
+	 * @param bean The bean
+	 * @param visitorClass The visitor class
+	 * @return <code>false</code> if the bean was already visited by the visitor class
+	 */
+	boolean add(Object bean, Class<?> visitorClass) {
+		if (table.add(bean, visitorClass) >= 0) {
+			return false;
+		}
+		if (table.isFull()) {
+			table.rehash(table.capacity() * 2, null);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of visited beans
+	 */
+	int size() {
+		return table.size();
+	}
+}
@@ -1,5 +1,28 @@
 package org.ctro.bender;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -38,4 +61,767 @@ public class BenderBeanTest extends TestCase {
 		source.accept(new NodeVisitor1());
 	}
 	
+	public void testInvalidKey() throws Exception {
+		BenderBeanSource source = new BenderBeanSource(new BenderSession(), new Node());
+		try {
+			source.register(InvalidKeyVisitor.class);
+			fail("'[]' accepted in the middle of a key");
+		} catch (BenderException e) {
+			// Expected
+		}
+	}
+	
+	public void testSharedSession() throws Exception {
+		final BenderSession session = new BenderSession();
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			futures.add(executor.submit(() -> {
+				new BenderBeanSource(session, new Node()).accept(new CountVisitor(count));
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertEquals(64 * 4, count.get());
+	}
+	
+	public void testAcceptAsync() throws Exception {
+		List<String> names = Collections.synchronizedList(new ArrayList<>());
+		BenderBeanSource source = new BenderBeanSource(new BenderSession(), new Node("root", 0));
+		source.acceptAsync(new NameVisitor(names, null)).get();
+		assertEquals("[root]", names.toString());
+		try {
+			source.acceptAsync(new InvalidKeyVisitor(), Runnable::run).get();
+			fail("Invalid visitor accepted");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BenderException);
+		}
+	}
+	
+	public void testAcceptAll() throws Exception {
+		BenderSession session = new BenderSession();
+		List<BenderBeanSource> sources = new ArrayList<>();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			sources.add(new BenderBeanSource(session, new Node("node" + i, 0)));
+			expected.add("node" + i);
+		}
+		// One source at a time keeps the iteration order
+		List<String> names = Collections.synchronizedList(new ArrayList<>());
+		BenderSource.acceptAll(sources, s -> new NameVisitor(names, null), 1).get();
+		assertEquals(expected, names);
+		
+		names.clear();
+		AtomicInteger running = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		NameVisitor visitor = new NameVisitor(names, running);
+		BenderSource.acceptAll(sources, s -> visitor, 3, executor).get();
+		executor.shutdown();
+		assertEquals(20, names.size());
+		assertTrue(visitor.maxRunning.get() <= 3);
+		
+		// Traversals completing in the calling thread do not nest calls
+		names.clear();
+		List<BenderBeanSource> many = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			many.add(sources.get(i % sources.size()));
+		}
+		BenderSource.acceptAll(many, s -> new NameVisitor(names, null), 4, Runnable::run).get();
+		assertEquals(100000, names.size());
+		
+		// Errors creating the visitors complete the result
+		try {
+			BenderSource.acceptAll(sources, s -> {
+				throw new LinkageError("No visitor");
+			}, 4, Runnable::run).get(10, TimeUnit.SECONDS);
+			fail("Error creating the visitor ignored");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof LinkageError);
+		}
+	}
+	
+	public void testBoundedSession() throws Exception {
+		BenderSession session = new BenderSession(1);
+		BenderBeanSource source = new BenderBeanSource(session, new Node());
+		source.register(CountVisitor.class);
+		source.register(CountVisitor.class);
+		source.register(NodeVisitor1.class);
+		assertEquals(1, session.size());
+		assertEquals(1, session.getHitCount());
+		assertEquals(2, session.getMissCount());
+		assertEquals(1, session.getEvictionCount());
+		session.clear();
+		assertEquals(0, session.size());
+	}
+	
+	public void testDroppedSession() throws Exception {
+		WeakReference<?> bindings = register(new BenderSession());
+		for (int i = 0; i < 100 && bindings.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+			// Other sessions keep using the visitor class
+			new BenderBeanSource(new BenderSession(), new Node()).register(CountVisitor.class);
+		}
+		assertNull("Bindings of a dropped session still reachable", bindings.get());
+	}
+	
+	public void testVisitorClassUnloading() throws Exception {
+		WeakReference<ClassLoader> loader = visitSizes();
+		for (int i = 0; i < 100 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		// Invokers created for the bean class must not keep the visitor class reachable
+		assertNull("Visitor class loader still reachable", loader.get());
+	}
+	
+	private static WeakReference<ClassLoader> visitSizes() throws Exception {
+		ClassLoader loader = new VisitorLoader(SumVisitor.class);
+		Node root = new Node("root", 1);
+		root.getChilds()[0] = new Node("child", 2);
+		BenderVisitor visitor = (BenderVisitor) loader.loadClass(SumVisitor.class.getName()).getDeclaredConstructor().newInstance();
+		assertNotSame(SumVisitor.class, visitor.getClass());
+		new BenderBeanSource(new BenderSession(), root).accept(visitor);
+		return new WeakReference<>(loader);
+	}
+	
+	private static WeakReference<?> register(BenderSession session) throws Exception {
+		new BenderBeanSource(session, new Node()).register(CountVisitor.class);
+		return new WeakReference<>(session.getBindings(BenderBeanSource.class, CountVisitor.class, () -> null));
+	}
+	
+	public void testParallel() throws Exception {
+		Node root = new Node("root", 1000);
+		for (int i = 0; i < root.getSize(); i++) {
+			root.getChilds()[i] = new Node("child" + i, i);
+		}
+		BenderBeanSource source = new BenderBeanSource(new BenderSession(), root);
+		source.setParallel(ForkJoinPool.commonPool(), 16);
+		SumVisitor visitor = new SumVisitor();
+		source.accept(visitor);
+		assertEquals(1000, visitor.count);
+		assertEquals(999 * 1000 / 2, visitor.sum);
+		assertTrue(visitor.chunks > 1);
+	}
+	
+	public void testBatch() throws Exception {
+		Node root = new Node("root", 10);
+		for (int i = 0; i < root.getSize(); i++) {
+			root.getChilds()[i] = new Node("child" + i, i);
+		}
+		BatchVisitor visitor = new BatchVisitor();
+		new BenderBeanSource(new BenderSession(), root).accept(visitor);
+		assertEquals("[4, 4, 2]", visitor.batches.toString());
+		assertEquals(45, visitor.sum);
+		assertTrue(visitor.ended);
+	}
+	
+	public void testMixedClasses() throws Exception {
+		List<Object> beans = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			beans.add(i % 2 == 0 ? new Node("node" + i, i) : new Parcel(i));
+		}
+		MixedVisitor visitor = new MixedVisitor();
+		new BenderBeanSource(new BenderSession(), beans).accept(visitor);
+		assertEquals(45, visitor.sum);
+		assertEquals(10, visitor.count);
+	}
+	
+	public static class Parcel {
+		
+		private final int size;
+		
+		public Parcel(int size) {
+			this.size = size;
+		}
+	}
+	
+	public static class MixedVisitor implements BenderVisitor {
+		
+		private int sum;
+		
+		private int count;
+		
+		@Bender("this[]")
+		public void visitElement(@Bender("size") int size) {
+			sum += size;
+			count++;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testPrimitiveArray() throws Exception {
+		Samples samples = new Samples();
+		samples.values = new double[10];
+		for (int i = 0; i < samples.values.length; i++) {
+			samples.values[i] = i;
+		}
+		SamplesVisitor visitor = new SamplesVisitor();
+		new BenderBeanSource(new BenderSession(), samples).accept(visitor);
+		assertEquals(45.0, visitor.sum, 0);
+		assertEquals("[4, 4, 2]", visitor.slices.toString());
+	}
+	
+	public void testVisitOnce() throws Exception {
+		Person child = new Person();
+		Person mother = new Person();
+		Person father = new Person();
+		child.parents = new Person[] { mother, father };
+		mother.parents = new Person[] { child };
+		father.parents = new Person[] { mother };
+		PersonVisitor visitor = new PersonVisitor(new AtomicInteger(), new AtomicInteger());
+		BenderBeanSource source = new BenderBeanSource(new BenderSession(), child);
+		source.setVisitOnce(true);
+		source.accept(visitor);
+		assertEquals(3, visitor.persons.get());
+		assertEquals(2, visitor.references.get());
+	}
+	
+	public static class Person {
+		
+		private Person[] parents = new Person[0];
+	}
+	
+	public static class PersonVisitor implements BenderReferenceVisitor {
+		
+		private final AtomicInteger persons;
+		
+		private final AtomicInteger references;
+		
+		public PersonVisitor(AtomicInteger persons, AtomicInteger references) {
+			this.persons = persons;
+			this.references = references;
+		}
+		
+		@Bender("this")
+		public void visitPerson() {
+			persons.incrementAndGet();
+		}
+		
+		@Bender("this.parents")
+		public PersonVisitor visitParents() {
+			return new PersonVisitor(persons, references);
+		}
+		
+		@Override
+		public void visitReference(Object bean) {
+			references.incrementAndGet();
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testLazyElements() throws Exception {
+		Catalog catalog = new Catalog();
+		catalog.prices.put("a", 1);
+		catalog.prices.put("b", 2);
+		catalog.codes = Arrays.asList(7, 8).iterator();
+		CatalogVisitor visitor = new CatalogVisitor();
+		new BenderBeanSource(new BenderSession(), catalog).accept(visitor);
+		assertEquals("a1b2", visitor.prices.toString());
+		assertEquals(3, visitor.values);
+		assertEquals(2, visitor.names);
+		assertEquals("xy", visitor.joinedNames.toString());
+		assertTrue(catalog.closed);
+		assertEquals(15, visitor.codes);
+		assertEquals("ann", visitor.owner);
+		assertFalse(visitor.other);
+	}
+	
+	public static class Catalog {
+		
+		private final Map<String, Integer> prices = new LinkedHashMap<>();
+		
+		private Iterator<Integer> codes;
+		
+		private Optional<String> owner = Optional.of("ann");
+		
+		private Optional<String> other = Optional.empty();
+		
+		private boolean closed;
+		
+		public Stream<String> getNames() {
+			return Stream.of("x", "y").onClose(() -> closed = true);
+		}
+	}
+	
+	public static class CatalogVisitor implements BenderVisitor {
+		
+		private final StringBuilder prices = new StringBuilder();
+		
+		private int values;
+		
+		private int names;
+		
+		private final StringBuilder joinedNames = new StringBuilder();
+		
+		private int codes;
+		
+		private String owner;
+		
+		private boolean other;
+		
+		@Bender("this.prices[]")
+		public void visitPrice(@Bender("getKey()") String key, @Bender("getValue()") Integer value) {
+			prices.append(key).append(value);
+		}
+		
+		@Bender("this.prices")
+		public BenderVisitor visitPrices() {
+			return new BenderVisitor() {
+				
+				@Bender("this")
+				public void visitValue(@Bender("this") int value) {
+					values += value;
+				}
+				
+				@Override
+				public void visitEnd() {
+				}
+			};
+		}
+		
+		@Bender("getNames()[]")
+		public void visitName(@Bender("this") String name) {
+			names++;
+		}
+		
+		@Bender("getNames()[]")
+		public void joinName(@Bender("this") String name) {
+			joinedNames.append(name);
+		}
+		
+		@Bender("this.codes[]")
+		public void visitCode(@Bender("this") int code) {
+			codes += code;
+		}
+		
+		@Bender("this.owner[]")
+		public void visitOwner(@Bender("this") String name) {
+			owner = name;
+		}
+		
+		@Bender("this.other[]")
+		public void visitOther(@Bender("this") String name) {
+			other = true;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testControl() throws Exception {
+		List<Node> roots = new ArrayList<>();
+		for (String name : new String[] {"a", "b"}) {
+			Node root = new Node(name, 4);
+			for (int i = 0; i < root.getSize(); i++) {
+				root.getChilds()[i] = new Node(name + i, 0);
+			}
+			roots.add(root);
+		}
+		// Skips the remaining children of the root being visited
+		ControlVisitor visitor = new ControlVisitor(BenderControl.SKIP);
+		new BenderBeanSource(new BenderSession(), roots).accept(visitor);
+		assertEquals("a0 a1 b0 b1 end", visitor.visits.toString());
+		// Stops the whole traversal
+		visitor = new ControlVisitor(BenderControl.TERMINATE);
+		new BenderBeanSource(new BenderSession(), roots).accept(visitor);
+		assertEquals("a0 a1 end", visitor.visits.toString());
+	}
+	
+	public static class ControlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits = new StringBuilder();
+		
+		private final ChildControlVisitor children;
+		
+		public ControlVisitor(BenderControl control) {
+			children = new ChildControlVisitor(visits, control);
+		}
+		
+		@Bender("this[]")
+		public ChildControlVisitor visitRoot() {
+			return children;
+		}
+		
+		@Override
+		public void visitEnd() {
+			visits.append("end");
+		}
+	}
+	
+	public static class ChildControlVisitor implements BenderVisitor {
+		
+		private final StringBuilder visits;
+		
+		private final BenderControl control;
+		
+		public ChildControlVisitor(StringBuilder visits, BenderControl control) {
+			this.visits = visits;
+			this.control = control;
+		}
+		
+		@Bender("this.childs[]")
+		public BenderControl visitChild(@Bender("name") String name) {
+			visits.append(name).append(' ');
+			return name.endsWith("1") ? control : BenderControl.CONTINUE;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testFilter() throws Exception {
+		List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			Order order = new Order();
+			order.status = i % 2 == 0 ? Status.OPEN : Status.CLOSED;
+			order.total = i * 30;
+			orders.add(order);
+		}
+		FilterVisitor visitor = new FilterVisitor();
+		new BenderBeanSource(new BenderSession(), orders).accept(visitor);
+		assertEquals(3, visitor.count);
+	}
+	
+	public enum Status {
+		OPEN, CLOSED
+	}
+	
+	public static class FilterVisitor implements BenderVisitor {
+		
+		private int count;
+		
+		@Bender("this[status == 'OPEN' && total > 100]")
+		public void visitOrder(@Bender("total") int total) {
+			assertTrue(total > 100);
+			count++;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testDelta() throws Exception {
+		List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			orders.add(new Order());
+		}
+		BenderBeanSource source = new BenderBeanSource(new BenderSession(), orders);
+		source.setDelta(true);
+		DeltaVisitor visitor = new DeltaVisitor();
+		source.accept(visitor);
+		assertEquals(3, visitor.visits);
+		orders.get(1).total = 10;
+		source.accept(visitor);
+		assertEquals(4, visitor.visits);
+		orders.remove(0);
+		source.accept(visitor);
+		assertEquals(4, visitor.visits);
+		assertEquals(1, visitor.removals);
+	}
+	
+	public static class DeltaVisitor implements BenderRemovalVisitor {
+		
+		private int visits;
+		
+		private int removals;
+		
+		@Bender("this[]")
+		public void visitOrder(@Bender("total") int total) {
+			visits++;
+		}
+		
+		@Override
+		public void visitRemoved(Object bean, Method method) {
+			assertEquals("visitOrder", method.getName());
+			removals++;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testSharedPrefix() throws Exception {
+		Order order = new Order();
+		PrefixVisitor visitor = new PrefixVisitor();
+		new BenderBeanSource(new BenderSession(), order).accept(visitor);
+		assertEquals("Ann@Oslo", visitor.order);
+		assertEquals("Ann", visitor.customer);
+		assertEquals(1, order.reads);
+	}
+	
+	public static class Order {
+		
+		private final Customer customer = new Customer();
+		
+		private Status status;
+		
+		private int total;
+		
+		private int reads;
+		
+		public Customer getCustomer() {
+			reads++;
+			return customer;
+		}
+	}
+	
+	public static class Customer {
+		
+		private String name = "Ann";
+		
+		private String city = "Oslo";
+	}
+	
+	public static class PrefixVisitor implements BenderVisitor {
+		
+		private String order;
+		
+		private String customer;
+		
+		@Bender("this")
+		public void visitOrder(@Bender("getCustomer().name") String name, @Bender("getCustomer().city") String city) {
+			order = name + '@' + city;
+		}
+		
+		@Bender("getCustomer()")
+		public void visitCustomer(@Bender("name") String name) {
+			customer = name;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public void testNonPublicBeanClass() throws Exception {
+		// Entries of a HashMap are instances of a JDK internal class that cannot be made accessible
+		Map<String, Integer> map = new HashMap<>();
+		map.put("a", 1);
+		map.put("b", 2);
+		EntryVisitor visitor = new EntryVisitor();
+		new BenderBeanSource(new BenderSession(), map).accept(visitor);
+		assertEquals(2, visitor.count);
+		assertEquals(3, visitor.sum);
+	}
+	
+	public static class EntryVisitor implements BenderVisitor {
+		
+		private int count;
+		
+		private int sum;
+		
+		@Bender("this[]")
+		public void visitEntry(@Bender("getKey()") String key, @Bender("getValue()") Integer value) {
+			assertEquals(key.charAt(0) - 'a' + 1, value.intValue());
+			count++;
+			sum += value;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class Samples {
+		
+		private double[] values;
+	}
+	
+	public static class SamplesVisitor implements BenderVisitor {
+		
+		private final List<Integer> slices = new ArrayList<>();
+		
+		private double sum;
+		
+		@Bender("this.values[]")
+		public void visitValue(@Bender("this") double value) {
+			sum += value;
+		}
+		
+		@Bender("this.values[]")
+		@BenderBatch(4)
+		public void visitSlice(@Bender("this") double[] values) {
+			slices.add(values.length);
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class BatchVisitor implements BenderVisitor {
+		
+		private final List<Integer> batches = new ArrayList<>();
+		
+		private long sum;
+		
+		private boolean ended;
+		
+		@Bender("this.childs[]")
+		@BenderBatch(4)
+		public void visitChilds(@Bender("name") String[] names, @Bender("size") int[] sizes) {
+			assertFalse(ended);
+			assertEquals(names.length, sizes.length);
+			batches.add(names.length);
+			for (int size : sizes) {
+				sum += size;
+			}
+		}
+		
+		@Override
+		public void visitEnd() {
+			ended = true;
+		}
+	}
+	
+	/**
+	 * Defines its own copy of a visitor class, loading other classes from the parent
+	 */
+	private static final class VisitorLoader extends ClassLoader {
+		
+		private final String name;
+		
+		VisitorLoader(Class<?> type) {
+			super(type.getClassLoader());
+			this.name = type.getName();
+		}
+		
+		@Override
+		protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+			if (!className.equals(name)) {
+				return super.loadClass(className, resolve);
+			}
+			synchronized (getClassLoadingLock(className)) {
+				Class<?> type = findLoadedClass(className);
+				if (type == null) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					try (InputStream in = getParent().getResourceAsStream(className.replace('.', '/') + ".class")) {
+						byte[] buffer = new byte[4096];
+						for (int n; (n = in.read(buffer)) > 0;) {
+							bytes.write(buffer, 0, n);
+						}
+					} catch (IOException e) {
+						throw new ClassNotFoundException(className, e);
+					}
+					type = defineClass(className, bytes.toByteArray(), 0, bytes.size());
+				}
+				return type;
+			}
+		}
+	}
+	
+	public static class SumVisitor implements BenderParallelVisitor<SumVisitor> {
+		
+		private int count;
+		
+		private long sum;
+		
+		private int chunks;
+		
+		@Bender("this.childs[]")
+		public void visitChild(@Bender("size") int size) {
+			count++;
+			sum += size;
+		}
+		
+		@Override
+		public SumVisitor fork() {
+			return new SumVisitor();
+		}
+		
+		@Override
+		public void merge(SumVisitor chunk) {
+			count += chunk.count;
+			sum += chunk.sum;
+			chunks++;
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class NameVisitor implements BenderVisitor {
+		
+		private final List<String> names;
+		
+		private final AtomicInteger running;
+		
+		private final AtomicInteger maxRunning = new AtomicInteger();
+		
+		public NameVisitor(List<String> names, AtomicInteger running) {
+			this.names = names;
+			this.running = running;
+		}
+		
+		@Bender("this")
+		public void visitNode(@Bender("name") String name) throws InterruptedException {
+			if (running != null) {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				Thread.sleep(5);
+				running.decrementAndGet();
+			}
+			names.add(name);
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class CountVisitor implements BenderVisitor {
+		
+		private final AtomicInteger count;
+		
+		public CountVisitor(AtomicInteger count) {
+			this.count = count;
+		}
+		
+		@Bender("this.childs[]")
+		public BenderVisitor visitChild(@Bender("this") Node child) {
+			count.incrementAndGet();
+			return new BenderVisitor() {
+				
+				@Bender("this")
+				public void visitNode(@Bender("name") String name) {
+					count.incrementAndGet();
+				}
+				
+				@Override
+				public void visitEnd() {
+				}
+			};
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
+	public static class InvalidKeyVisitor implements BenderVisitor {
+		
+		@Bender("this.childs[].name")
+		public void visitName(@Bender("this") String name) {
+		}
+		
+		@Override
+		public void visitEnd() {
+		}
+	}
+	
 }
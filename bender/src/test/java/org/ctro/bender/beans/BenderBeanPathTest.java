@@ -0,0 +1,78 @@
+package org.ctro.bender.beans;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for BenderBeanPath.
+ */
+public class BenderBeanPathTest extends TestCase {
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName
+	 *            name of the test case
+	 */
+	public BenderBeanPathTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(BenderBeanPathTest.class);
+	}
+
+	public void testSharedAccessors() throws Exception {
+		BenderBeanPath size = BenderBeanPath.compile("size", false);
+		BenderBeanPath name = BenderBeanPath.compile("getName()", false);
+		Object[] beans = {new Box("a", 1), new Crate("b", 2L), new Box("c", 3), new Crate("d", 4L)};
+		StringBuilder values = new StringBuilder();
+		for (Object bean : beans) {
+			values.append(name.resolve(bean)).append(size.resolve(bean)).append(' ');
+		}
+		assertEquals("a1 b2 c3 d4 ", values.toString());
+		// Paths alternating classes read through the accessors of each class
+		BenderBeanClass box = BenderBeanClass.of(Box.class);
+		BenderBeanPath.Accessor accessor = box.getAccessor("size", false);
+		assertSame(accessor, box.getAccessor("size", false));
+		assertSame(accessor, size.getSegments()[0].getAccessor(new Box("e", 5)));
+		assertNotSame(accessor, size.getSegments()[0].getAccessor(new Crate("f", 6L)));
+		assertSame(box.getAccessor("getName", true), name.getSegments()[0].getAccessor(new Box("g", 7)));
+	}
+
+	public static class Box {
+
+		private final String name;
+
+		private final int size;
+
+		public Box(String name, int size) {
+			this.name = name;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static class Crate {
+
+		private final String name;
+
+		private final long size;
+
+		public Crate(String name, long size) {
+			this.name = name;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}